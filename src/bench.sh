@@ -0,0 +1,4 @@
+#!/bin/bash
+javac -cp ../artifacts/*:../lib/*:. ru/ifmo/rain/krotkov/benchmark/$1.java
+
+java -cp ../artifacts/*:../lib/*:. ru.ifmo.rain.krotkov.benchmark.$1 ${@:2}
@@ -1,13 +1,32 @@
 package ru.ifmo.rain.krotkov.arrayset;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static java.util.Objects.isNull;
 
+/**
+ * Immutable sorted set backed by a sorted list.
+ * Views share the backing list and are represented by a range of it and a direction,
+ * so any chain of view operations takes constant memory and a single list access per element.
+ */
 public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    // sorted by comparator, whatever the direction of the view is
     private final List<T> data;
     private final Comparator<? super T> comparator;
+    private final int from;
+    private final int to;
+    private final boolean isReversed;
 
+    /**
+     * Backing list which compares its element with a key in place, without creating the element.
+     * Searches of a set use it instead of reading elements.
+     */
+    interface SortedKeys<T> {
+        int compareAt(int index, T key);
+    }
 
     public ArraySet() {
         this(Collections.emptyList(), null);
@@ -22,56 +41,211 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     public ArraySet(Collection<? extends T> other, Comparator<? super T> comparator) {
-        Set<T> buffer = new TreeSet<>(comparator);
-        buffer.addAll(other);
-        data = new ArrayList<>(buffer);
+        data = sortedUnique(other, comparator);
         this.comparator = comparator;
+        from = 0;
+        to = data.size();
+        isReversed = false;
     }
 
-    private ArraySet(List<T> other, Comparator<? super T> comparator) {
-        data = other;
+    /**
+     * Creates view of {@code data} without copying or checking it, see {@link #wrapSorted}.
+     */
+    ArraySet(List<T> data, Comparator<? super T> comparator, int from, int to, boolean isReversed) {
+        this.data = data;
         this.comparator = comparator;
+        this.from = from;
+        this.to = to;
+        this.isReversed = isReversed;
+    }
+
+    /**
+     * Creates set backed by {@code sorted} itself, which must be strictly ascending by {@code comparator}.
+     * The list is neither copied nor checked, and must not be modified afterwards.
+     */
+    static <T> ArraySet<T> wrapSorted(List<T> sorted, Comparator<? super T> comparator) {
+        return new ArraySet<>(sorted, comparator, 0, sorted.size(), false);
+    }
+
+    /**
+     * Creates set from elements already sorted by {@code comparator} with a single copy.
+     * Equal neighbours are allowed and collapsed to the first of them.
+     *
+     * @throws IllegalArgumentException if {@code sorted} is not ordered by {@code comparator}
+     */
+    public static <T> ArraySet<T> fromSorted(Collection<? extends T> sorted, Comparator<? super T> comparator) {
+        List<T> list = new ArrayList<>(sorted);
+        for (int i = 1; i < list.size(); i++) {
+            if (compare(comparator, list.get(i - 1), list.get(i)) > 0) {
+                throw new IllegalArgumentException("Elements are not sorted");
+            }
+        }
+        return wrapSorted(unique(list, comparator), comparator);
+    }
+
+    /**
+     * Creates set from an arbitrary collection using all available processors.
+     * Chunks of elements are sorted in parallel and then merged pairwise, merges of every round run in parallel.
+     * After that equal neighbours are removed in parallel chunks: each chunk counts elements it keeps,
+     * and then copies them to its own part of the result.
+     * Like the constructor, keeps the first of equal elements.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ArraySet<T> parallel(Collection<? extends T> other, Comparator<? super T> comparator) {
+        if (other.size() < PARALLEL_THRESHOLD || Runtime.getRuntime().availableProcessors() == 1) {
+            return new ArraySet<>(other, comparator);
+        }
+        int chunks = Math.min(other.size() / PARALLEL_THRESHOLD + 1, 4 * Runtime.getRuntime().availableProcessors());
+        T[] sorted = parallelSort((T[]) other.toArray(), comparator, chunks);
+
+        int[] offsets = new int[chunks + 1];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int kept = 0;
+            for (int i = chunkStart(chunk, chunks, sorted.length); i < chunkStart(chunk + 1, chunks, sorted.length); i++) {
+                if (i == 0 || compare(comparator, sorted[i - 1], sorted[i]) != 0) {
+                    kept++;
+                }
+            }
+            offsets[chunk + 1] = kept;
+        });
+        Arrays.parallelPrefix(offsets, Integer::sum);
+
+        Object[] result = new Object[offsets[chunks]];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int position = offsets[chunk];
+            for (int i = chunkStart(chunk, chunks, sorted.length); i < chunkStart(chunk + 1, chunks, sorted.length); i++) {
+                if (i == 0 || compare(comparator, sorted[i - 1], sorted[i]) != 0) {
+                    result[position++] = sorted[i];
+                }
+            }
+        });
+        return wrapSorted((List<T>) Arrays.asList(result), comparator);
+    }
+
+    /**
+     * Stable parallel merge sort. {@link Arrays#parallelSort} is not used as it does not keep order of equal elements.
+     *
+     * @return sorted array, either {@code array} itself or a buffer of the same size
+     */
+    private static <T> T[] parallelSort(T[] array, Comparator<? super T> comparator, int chunks) {
+        IntStream.range(0, chunks).parallel().forEach(chunk -> Arrays.sort(array,
+                chunkStart(chunk, chunks, array.length), chunkStart(chunk + 1, chunks, array.length),
+                isNull(comparator) ? null : comparator));
+
+        T[] source = array;
+        T[] target = array.clone();
+        for (int width = 1; width < chunks; width *= 2) {
+            final int step = width;
+            final T[] from = source;
+            final T[] to = target;
+            IntStream.range(0, (chunks + 2 * step - 1) / (2 * step)).parallel().forEach(pair -> {
+                int left = chunkStart(2 * step * pair, chunks, array.length);
+                int middle = chunkStart(Math.min(2 * step * pair + step, chunks), chunks, array.length);
+                int right = chunkStart(Math.min(2 * step * pair + 2 * step, chunks), chunks, array.length);
+                int i = left;
+                int j = middle;
+                for (int k = left; k < right; k++) {
+                    // takes the left element on ties, so the merge is stable
+                    if (j == right || i < middle && compare(comparator, from[j], from[i]) >= 0) {
+                        to[k] = from[i++];
+                    } else {
+                        to[k] = from[j++];
+                    }
+                }
+            });
+            source = to;
+            target = from;
+        }
+        return source;
     }
 
-    private int getBinarySearchIndex(int existsShift, int notExistsShift, T elem) {
-        int index = Collections.binarySearch(data, elem, comparator);
-        if (index >= 0) {
-            return index + existsShift;
-        } else {
-            return -index - 1 + notExistsShift;
+    private static int chunkStart(int chunk, int chunks, int size) {
+        return (int) ((long) size * chunk / chunks);
+    }
+
+    private static <T> List<T> sortedUnique(Collection<? extends T> other, Comparator<? super T> comparator) {
+        List<T> list = new ArrayList<>(other);
+        if (other instanceof SortedSet && Objects.equals(((SortedSet<?>) other).comparator(), comparator)) {
+            return list;
+        }
+        // TimSort is linear on already sorted input and stable, so the first of equal elements is kept like in TreeSet
+        list.sort(comparator);
+        return unique(list, comparator);
+    }
+
+    private static <T> List<T> unique(List<T> sorted, Comparator<? super T> comparator) {
+        if (sorted.isEmpty()) {
+            return sorted;
+        }
+        // like TreeSet, reject a single element which is null or not comparable
+        compare(comparator, sorted.get(0), sorted.get(0));
+        int size = 1;
+        for (int i = 1; i < sorted.size(); i++) {
+            if (compare(comparator, sorted.get(size - 1), sorted.get(i)) != 0) {
+                sorted.set(size++, sorted.get(i));
+            }
+        }
+        sorted.subList(size, sorted.size()).clear();
+        return sorted;
+    }
+
+    /**
+     * Returns index of the first element of {@code data} in {@code [from, to)} which is not less
+     * ({@code strict}: greater) than {@code elem}.
+     */
+    private int bound(T elem, boolean strict) {
+        int left = from - 1;
+        int right = to;
+        while (right - left > 1) {
+            int middle = (left + right) >>> 1;
+            int cmp = compareAt(middle, elem);
+            if (cmp < 0 || strict && cmp == 0) {
+                left = middle;
+            } else {
+                right = middle;
+            }
         }
+        return right;
     }
 
-    private boolean checkIndex(int index) {
-        return (index >= 0 && index < data.size());
+    private int lowerBound(T elem) {
+        return bound(elem, false);
+    }
+
+    private int upperBound(T elem) {
+        return bound(elem, true);
     }
 
     private T getElem(int index) {
-        return checkIndex(index) ? data.get(index) : null;
+        return from <= index && index < to ? data.get(index) : null;
     }
 
-    private T getBinarySearchElem(int existsShift, int notExistsShift, T elem) {
-        return getElem(getBinarySearchIndex(existsShift, notExistsShift, elem));
+    private int index(int position) {
+        return isReversed ? to - 1 - position : from + position;
+    }
+
+    private T get(int position) {
+        return data.get(index(position));
     }
 
     @Override
     public T lower(T t) {
-        return getBinarySearchElem(-1, -1, t);
+        return getElem(isReversed ? upperBound(t) : lowerBound(t) - 1);
     }
 
     @Override
     public T floor(T t) {
-        return getBinarySearchElem(0, -1, t);
+        return getElem(isReversed ? lowerBound(t) : upperBound(t) - 1);
     }
 
     @Override
     public T ceiling(T t) {
-        return getBinarySearchElem(0, 0, t);
+        return getElem(isReversed ? upperBound(t) - 1 : lowerBound(t));
     }
 
     @Override
     public T higher(T t) {
-        return getBinarySearchElem(1, 0, t);
+        return getElem(isReversed ? lowerBound(t) - 1 : upperBound(t));
     }
 
     @Override
@@ -86,37 +260,27 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
 
     @Override
     public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
-    }
+        return new Iterator<>() {
+            private int position = 0;
 
-    private static class DescendingList<T> extends AbstractList<T> {
-        private final List<T> data;
-        private boolean isReversed;
-
-        DescendingList(List<T> list) {
-            if (list instanceof DescendingList) {
-                data = ((DescendingList<T>) list).data;
-                isReversed = !((DescendingList<T>) list).isReversed;
-            } else {
-                data = list;
-                isReversed = true;
+            @Override
+            public boolean hasNext() {
+                return position < size();
             }
-        }
-
-        @Override
-        public T get(int index) {
-            return data.get(isReversed ? size() - 1 - index : index);
-        }
 
-        @Override
-        public int size() {
-            return data.size();
-        }
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(position++);
+            }
+        };
     }
 
     @Override
-    public NavigableSet<T> descendingSet() {
-        return new ArraySet<>(new DescendingList<>(data), Collections.reverseOrder(comparator));
+    public ArraySet<T> descendingSet() {
+        return new ArraySet<>(data, comparator, from, to, !isReversed);
     }
 
     @Override
@@ -124,58 +288,63 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         return descendingSet().iterator();
     }
 
+    private ArraySet<T> range(int left, int right) {
+        return new ArraySet<>(data, comparator, left, Math.max(left, right), isReversed);
+    }
+
     @Override
-    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+    public ArraySet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
         if (!validateOrder(fromElement, toElement)) {
             throw new IllegalArgumentException();
         }
-        return cutSet(fromElement, fromInclusive, toElement, toInclusive);
-    }
-
-    private NavigableSet<T> cutSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
-        int left = getBinarySearchIndex(fromInclusive ? 0 : 1, 0, fromElement);
-        int right = getBinarySearchIndex(toInclusive ? 0 : -1, -1, toElement) + 1;
-        return (left >= right || left == -1 || right > data.size() || right == -1) ? new ArraySet<>(comparator)
-                : new ArraySet<>(data.subList(left, right), comparator);
+        if (isReversed) {
+            return range(toInclusive ? lowerBound(toElement) : upperBound(toElement),
+                    fromInclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(fromInclusive ? lowerBound(fromElement) : upperBound(fromElement),
+                toInclusive ? upperBound(toElement) : lowerBound(toElement));
     }
 
     @Override
-    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        return isEmpty() ? new ArraySet<>(comparator) : cutSet(first(), true, toElement, inclusive);
+    public ArraySet<T> headSet(T toElement, boolean inclusive) {
+        if (isReversed) {
+            return range(inclusive ? lowerBound(toElement) : upperBound(toElement), to);
+        }
+        return range(from, inclusive ? upperBound(toElement) : lowerBound(toElement));
     }
 
     @Override
-    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        return isEmpty() ? new ArraySet<>(comparator) : cutSet(fromElement, inclusive, last(), true);
+    public ArraySet<T> tailSet(T fromElement, boolean inclusive) {
+        if (isReversed) {
+            return range(from, inclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(inclusive ? lowerBound(fromElement) : upperBound(fromElement), to);
     }
 
     @Override
     public Comparator<? super T> comparator() {
-        return comparator;
+        return isReversed ? Collections.reverseOrder(comparator) : comparator;
     }
 
     @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        if (!validateOrder(fromElement, toElement)) {
-            throw new IllegalArgumentException();
-        }
-        return cutSet(fromElement, true, toElement, false);
+    public ArraySet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
     }
 
     private boolean validateOrder(T from, T to) {
         if (isNull(comparator)) {
-            return isNull(from) || isNull(to) || ((Comparable) from).compareTo(to) <= 0;
+            return isNull(from) || isNull(to) || compareInView(from, to) <= 0;
         }
-        return comparator.compare(from, to) <= 0;
+        return compareInView(from, to) <= 0;
     }
 
     @Override
-    public SortedSet<T> headSet(T toElement) {
+    public ArraySet<T> headSet(T toElement) {
         return headSet(toElement, false);
     }
 
     @Override
-    public SortedSet<T> tailSet(T fromElement) {
+    public ArraySet<T> tailSet(T fromElement) {
         return tailSet(fromElement, true);
     }
 
@@ -188,22 +357,209 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     @Override
     public T first() {
         checkEmpty();
-        return data.get(0);
+        return get(0);
     }
 
     @Override
     public T last() {
         checkEmpty();
-        return data.get(data.size() - 1);
+        return get(size() - 1);
     }
 
     @Override
     public int size() {
-        return data.size();
+        return to - from;
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public boolean contains(Object o) {
-        return Collections.binarySearch(data, (T) o, comparator) >= 0;
+        int index = lowerBound((T) o);
+        return index < to && compareAt(index, (T) o) == 0;
+    }
+
+    /**
+     * Returns number of elements of this set preceding {@code elem} in its order
+     * ({@code inclusive}: also counting {@code elem} itself if it is present).
+     */
+    private int headCount(T elem, boolean inclusive) {
+        if (isReversed) {
+            return to - (inclusive ? lowerBound(elem) : upperBound(elem));
+        }
+        return (inclusive ? upperBound(elem) : lowerBound(elem)) - from;
+    }
+
+    /**
+     * Returns number of elements of this set preceding {@code elem}, i.e. the index it has or would have
+     * in this set. Works in {@code O(log n)} for views as well.
+     */
+    public int rank(T elem) {
+        return headCount(elem, false);
+    }
+
+    /**
+     * Returns index of {@code elem} in this set or {@code -1} if it is absent.
+     */
+    public int indexOf(T elem) {
+        int rank = rank(elem);
+        return rank < size() && compareAt(index(rank), elem) == 0 ? rank : -1;
+    }
+
+    /**
+     * Returns element with the given index in this set in {@code O(1)}.
+     *
+     * @throws IndexOutOfBoundsException if {@code index} is not in {@code [0, size())}
+     */
+    public T select(int index) {
+        Objects.checkIndex(index, size());
+        return get(index);
+    }
+
+    /**
+     * Returns size of {@link #subSet(Object, boolean, Object, boolean)} with the same arguments
+     * without creating the view.
+     *
+     * @throws IllegalArgumentException if {@code fromElement} is greater than {@code toElement}
+     */
+    public int rangeCount(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if (!validateOrder(fromElement, toElement)) {
+            throw new IllegalArgumentException();
+        }
+        return Math.max(0, headCount(toElement, toInclusive) - headCount(fromElement, !fromInclusive));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> int compare(Comparator<? super T> comparator, T first, T second) {
+        return isNull(comparator) ? ((Comparable<? super T>) first).compareTo(second) : comparator.compare(first, second);
+    }
+
+    private int compare(T first, T second) {
+        return compare(comparator, first, second);
+    }
+
+    /**
+     * Compares element of {@code data} at {@code index} with {@code elem}.
+     */
+    @SuppressWarnings("unchecked")
+    private int compareAt(int index, T elem) {
+        return data instanceof SortedKeys
+                ? ((SortedKeys<T>) data).compareAt(index, elem)
+                : compare(data.get(index), elem);
+    }
+
+    private int compareInView(T first, T second) {
+        return isReversed ? compare(second, first) : compare(first, second);
+    }
+
+    /**
+     * Returns the first position in {@code [start, size)} with element not less than {@code elem} in view order.
+     * Probes exponentially growing distances first, so the cost is logarithmic in the distance, not in the size.
+     */
+    private int gallop(int start, T elem) {
+        int left = start - 1;
+        int right = start;
+        int step = 1;
+        while (right < size() && compareInView(get(right), elem) < 0) {
+            left = right;
+            right += step;
+            step <<= 1;
+        }
+        right = Math.min(right, size());
+        while (right - left > 1) {
+            int middle = (left + right) >>> 1;
+            if (compareInView(get(middle), elem) < 0) {
+                left = middle;
+            } else {
+                right = middle;
+            }
+        }
+        return right;
+    }
+
+    private void copyTo(List<T> result, int fromPosition, int toPosition) {
+        if (isReversed) {
+            for (int i = fromPosition; i < toPosition; i++) {
+                result.add(get(i));
+            }
+        } else {
+            result.addAll(data.subList(from + fromPosition, from + toPosition));
+        }
+    }
+
+    private static <T> ArraySet<T> merge(ArraySet<T> first, ArraySet<T> second,
+                                         boolean keepFirstOnly, boolean keepCommon, boolean keepSecondOnly) {
+        if (!Objects.equals(first.comparator(), second.comparator())) {
+            throw new IllegalArgumentException("Sets must be ordered by the same comparator");
+        }
+
+        List<T> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            int cmp = first.compareInView(first.get(i), second.get(j));
+            if (cmp < 0) {
+                int next = first.gallop(i, second.get(j));
+                if (keepFirstOnly) {
+                    first.copyTo(result, i, next);
+                }
+                i = next;
+            } else if (cmp > 0) {
+                int next = second.gallop(j, first.get(i));
+                if (keepSecondOnly) {
+                    second.copyTo(result, j, next);
+                }
+                j = next;
+            } else {
+                if (keepCommon) {
+                    result.add(first.get(i));
+                }
+                i++;
+                j++;
+            }
+        }
+        if (keepFirstOnly) {
+            first.copyTo(result, i, first.size());
+        }
+        if (keepSecondOnly) {
+            second.copyTo(result, j, second.size());
+        }
+        return wrapSorted(result, first.comparator());
+    }
+
+    /**
+     * Returns elements contained in at least one of the sets.
+     * Both sets must be ordered by the same comparator; works in a single linear merge pass.
+     *
+     * @throws IllegalArgumentException if comparators of the sets differ
+     */
+    public static <T> ArraySet<T> union(ArraySet<T> first, ArraySet<T> second) {
+        return merge(first, second, true, true, true);
+    }
+
+    /**
+     * Returns elements contained in both sets.
+     *
+     * @throws IllegalArgumentException if comparators of the sets differ
+     */
+    public static <T> ArraySet<T> intersect(ArraySet<T> first, ArraySet<T> second) {
+        return merge(first, second, false, true, false);
+    }
+
+    /**
+     * Returns elements of {@code first} not contained in {@code second}.
+     *
+     * @throws IllegalArgumentException if comparators of the sets differ
+     */
+    public static <T> ArraySet<T> difference(ArraySet<T> first, ArraySet<T> second) {
+        return merge(first, second, true, false, false);
+    }
+
+    /**
+     * Returns elements contained in exactly one of the sets.
+     *
+     * @throws IllegalArgumentException if comparators of the sets differ
+     */
+    public static <T> ArraySet<T> symmetricDifference(ArraySet<T> first, ArraySet<T> second) {
+        return merge(first, second, true, false, true);
     }
 }
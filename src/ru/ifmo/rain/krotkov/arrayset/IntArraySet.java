@@ -0,0 +1,331 @@
+package ru.ifmo.rain.krotkov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code int} values backed by a single {@code int[]}.
+ * Besides the boxed {@link NavigableSet} API provides primitive methods that never box.
+ * Views share the backing array and are represented by a range and a direction.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+    private final int[] data;
+    private final int from;
+    private final int to;
+    private final boolean isReversed;
+    private final IntEytzingerIndex index;
+
+    public IntArraySet(int... values) {
+        this(sortedUnique(values), false);
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(sortedUnique(collection.stream().mapToInt(Integer::intValue).toArray()), false);
+    }
+
+    private IntArraySet(int[] data, boolean isReversed) {
+        this(data, 0, data.length, isReversed, null);
+    }
+
+    private IntArraySet(int[] data, int from, int to, boolean isReversed, IntEytzingerIndex index) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.isReversed = isReversed;
+        this.index = index;
+    }
+
+    /**
+     * Returns the same set with a read-optimized search index in Eytzinger (breadth-first) layout.
+     * The index is built over the whole backing array and is shared by all views created from the returned set.
+     * The index takes as much additional memory as the backing array.
+     */
+    public IntArraySet withEytzingerLayout() {
+        return new IntArraySet(data, from, to, isReversed, index == null ? new IntEytzingerIndex(data) : index);
+    }
+
+    private static int[] sortedUnique(int[] values) {
+        int[] result = values.clone();
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[size - 1]) {
+                result[size++] = result[i];
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private int lowerBound(int value) {
+        if (index != null) {
+            return clamp(index.lowerBound(value));
+        }
+        int position = Arrays.binarySearch(data, from, to, value);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private int upperBound(int value) {
+        if (index != null) {
+            return clamp(index.upperBound(value));
+        }
+        int position = Arrays.binarySearch(data, from, to, value);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private int clamp(int position) {
+        return Math.max(from, Math.min(to, position));
+    }
+
+    private int checkIndex(int index) {
+        return from <= index && index < to ? index : -1;
+    }
+
+    private int toArrayIndex(int position) {
+        return isReversed ? to - 1 - position : from + position;
+    }
+
+    private int lowerIndex(int value) {
+        return checkIndex(isReversed ? upperBound(value) : lowerBound(value) - 1);
+    }
+
+    private int floorIndex(int value) {
+        return checkIndex(isReversed ? lowerBound(value) : upperBound(value) - 1);
+    }
+
+    private int ceilingIndex(int value) {
+        return checkIndex(isReversed ? upperBound(value) - 1 : lowerBound(value));
+    }
+
+    private int higherIndex(int value) {
+        return checkIndex(isReversed ? lowerBound(value) - 1 : upperBound(value));
+    }
+
+    private Integer boxed(int index) {
+        return index < 0 ? null : data[index];
+    }
+
+    private int orElse(int index, int absent) {
+        return index < 0 ? absent : data[index];
+    }
+
+    /**
+     * Checks whether {@code value} belongs to this set without boxing.
+     */
+    public boolean containsInt(int value) {
+        int position = lowerBound(value);
+        return position < to && data[position] == value;
+    }
+
+    /**
+     * Returns element at {@code position} in iteration order.
+     *
+     * @throws IndexOutOfBoundsException if {@code position} is out of range
+     */
+    public int getInt(int position) {
+        Objects.checkIndex(position, size());
+        return data[toArrayIndex(position)];
+    }
+
+    /**
+     * Returns the greatest element strictly less than {@code value} or {@code absent} if there is no such element.
+     */
+    public int lowerInt(int value, int absent) {
+        return orElse(lowerIndex(value), absent);
+    }
+
+    /**
+     * Returns the greatest element less than or equal to {@code value} or {@code absent} if there is no such element.
+     */
+    public int floorInt(int value, int absent) {
+        return orElse(floorIndex(value), absent);
+    }
+
+    /**
+     * Returns the least element greater than or equal to {@code value} or {@code absent} if there is no such element.
+     */
+    public int ceilingInt(int value, int absent) {
+        return orElse(ceilingIndex(value), absent);
+    }
+
+    /**
+     * Returns the least element strictly greater than {@code value} or {@code absent} if there is no such element.
+     */
+    public int higherInt(int value, int absent) {
+        return orElse(higherIndex(value), absent);
+    }
+
+    public int firstInt() {
+        checkEmpty();
+        return data[toArrayIndex(0)];
+    }
+
+    public int lastInt() {
+        checkEmpty();
+        return data[toArrayIndex(size() - 1)];
+    }
+
+    /**
+     * Copies elements of this set to a new array in iteration order.
+     */
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(data, from, to);
+        if (isReversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        if (isReversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        if (isReversed) {
+            return range(toInclusive ? lowerBound(toElement) : upperBound(toElement),
+                    fromInclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(fromInclusive ? lowerBound(fromElement) : upperBound(fromElement),
+                toInclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        if (isReversed) {
+            return range(inclusive ? lowerBound(toElement) : upperBound(toElement), to);
+        }
+        return range(from, inclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        if (isReversed) {
+            return range(from, inclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(inclusive ? lowerBound(fromElement) : upperBound(fromElement), to);
+    }
+
+    private IntArraySet range(int left, int right) {
+        return new IntArraySet(data, left, Math.max(left, right), isReversed, index);
+    }
+
+    @Override
+    public Integer lower(Integer t) {
+        return boxed(lowerIndex(t));
+    }
+
+    @Override
+    public Integer floor(Integer t) {
+        return boxed(floorIndex(t));
+    }
+
+    @Override
+    public Integer ceiling(Integer t) {
+        return boxed(ceilingIndex(t));
+    }
+
+    @Override
+    public Integer higher(Integer t) {
+        return boxed(higherIndex(t));
+    }
+
+    @Override
+    public Integer pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return data[toArrayIndex(position++)];
+            }
+        };
+    }
+
+    @Override
+    public IntArraySet descendingSet() {
+        return new IntArraySet(data, from, to, !isReversed, index);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+        return subSet((int) fromElement, fromInclusive, (int) toElement, toInclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement, boolean inclusive) {
+        return headSet((int) toElement, inclusive);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement, boolean inclusive) {
+        return tailSet((int) fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return isReversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, Integer toElement) {
+        return subSet((int) fromElement, true, (int) toElement, false);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement) {
+        return headSet((int) toElement, false);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement) {
+        return tailSet((int) fromElement, true);
+    }
+
+    private void checkEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && containsInt((Integer) o);
+    }
+}
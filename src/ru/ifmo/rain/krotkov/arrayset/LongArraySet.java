@@ -0,0 +1,331 @@
+package ru.ifmo.rain.krotkov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code long} values backed by a single {@code long[]}.
+ * Besides the boxed {@link NavigableSet} API provides primitive methods that never box.
+ * Views share the backing array and are represented by a range and a direction.
+ */
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+    private final long[] data;
+    private final int from;
+    private final int to;
+    private final boolean isReversed;
+    private final LongEytzingerIndex index;
+
+    public LongArraySet(long... values) {
+        this(sortedUnique(values), false);
+    }
+
+    public LongArraySet(Collection<Long> collection) {
+        this(sortedUnique(collection.stream().mapToLong(Long::longValue).toArray()), false);
+    }
+
+    private LongArraySet(long[] data, boolean isReversed) {
+        this(data, 0, data.length, isReversed, null);
+    }
+
+    private LongArraySet(long[] data, int from, int to, boolean isReversed, LongEytzingerIndex index) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.isReversed = isReversed;
+        this.index = index;
+    }
+
+    /**
+     * Returns the same set with a read-optimized search index in Eytzinger (breadth-first) layout.
+     * The index is built over the whole backing array and is shared by all views created from the returned set.
+     * The index takes as much additional memory as the backing array.
+     */
+    public LongArraySet withEytzingerLayout() {
+        return new LongArraySet(data, from, to, isReversed, index == null ? new LongEytzingerIndex(data) : index);
+    }
+
+    private static long[] sortedUnique(long[] values) {
+        long[] result = values.clone();
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[size - 1]) {
+                result[size++] = result[i];
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private int lowerBound(long value) {
+        if (index != null) {
+            return clamp(index.lowerBound(value));
+        }
+        int position = Arrays.binarySearch(data, from, to, value);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private int upperBound(long value) {
+        if (index != null) {
+            return clamp(index.upperBound(value));
+        }
+        int position = Arrays.binarySearch(data, from, to, value);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private int clamp(int position) {
+        return Math.max(from, Math.min(to, position));
+    }
+
+    private int checkIndex(int index) {
+        return from <= index && index < to ? index : -1;
+    }
+
+    private int toArrayIndex(int position) {
+        return isReversed ? to - 1 - position : from + position;
+    }
+
+    private int lowerIndex(long value) {
+        return checkIndex(isReversed ? upperBound(value) : lowerBound(value) - 1);
+    }
+
+    private int floorIndex(long value) {
+        return checkIndex(isReversed ? lowerBound(value) : upperBound(value) - 1);
+    }
+
+    private int ceilingIndex(long value) {
+        return checkIndex(isReversed ? upperBound(value) - 1 : lowerBound(value));
+    }
+
+    private int higherIndex(long value) {
+        return checkIndex(isReversed ? lowerBound(value) - 1 : upperBound(value));
+    }
+
+    private Long boxed(int index) {
+        return index < 0 ? null : data[index];
+    }
+
+    private long orElse(int index, long absent) {
+        return index < 0 ? absent : data[index];
+    }
+
+    /**
+     * Checks whether {@code value} belongs to this set without boxing.
+     */
+    public boolean containsLong(long value) {
+        int position = lowerBound(value);
+        return position < to && data[position] == value;
+    }
+
+    /**
+     * Returns element at {@code position} in iteration order.
+     *
+     * @throws IndexOutOfBoundsException if {@code position} is out of range
+     */
+    public long getLong(int position) {
+        Objects.checkIndex(position, size());
+        return data[toArrayIndex(position)];
+    }
+
+    /**
+     * Returns the greatest element strictly less than {@code value} or {@code absent} if there is no such element.
+     */
+    public long lowerLong(long value, long absent) {
+        return orElse(lowerIndex(value), absent);
+    }
+
+    /**
+     * Returns the greatest element less than or equal to {@code value} or {@code absent} if there is no such element.
+     */
+    public long floorLong(long value, long absent) {
+        return orElse(floorIndex(value), absent);
+    }
+
+    /**
+     * Returns the least element greater than or equal to {@code value} or {@code absent} if there is no such element.
+     */
+    public long ceilingLong(long value, long absent) {
+        return orElse(ceilingIndex(value), absent);
+    }
+
+    /**
+     * Returns the least element strictly greater than {@code value} or {@code absent} if there is no such element.
+     */
+    public long higherLong(long value, long absent) {
+        return orElse(higherIndex(value), absent);
+    }
+
+    public long firstLong() {
+        checkEmpty();
+        return data[toArrayIndex(0)];
+    }
+
+    public long lastLong() {
+        checkEmpty();
+        return data[toArrayIndex(size() - 1)];
+    }
+
+    /**
+     * Copies elements of this set to a new array in iteration order.
+     */
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(data, from, to);
+        if (isReversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        if (isReversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        if (isReversed) {
+            return range(toInclusive ? lowerBound(toElement) : upperBound(toElement),
+                    fromInclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(fromInclusive ? lowerBound(fromElement) : upperBound(fromElement),
+                toInclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        if (isReversed) {
+            return range(inclusive ? lowerBound(toElement) : upperBound(toElement), to);
+        }
+        return range(from, inclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        if (isReversed) {
+            return range(from, inclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return range(inclusive ? lowerBound(fromElement) : upperBound(fromElement), to);
+    }
+
+    private LongArraySet range(int left, int right) {
+        return new LongArraySet(data, left, Math.max(left, right), isReversed, index);
+    }
+
+    @Override
+    public Long lower(Long t) {
+        return boxed(lowerIndex(t));
+    }
+
+    @Override
+    public Long floor(Long t) {
+        return boxed(floorIndex(t));
+    }
+
+    @Override
+    public Long ceiling(Long t) {
+        return boxed(ceilingIndex(t));
+    }
+
+    @Override
+    public Long higher(Long t) {
+        return boxed(higherIndex(t));
+    }
+
+    @Override
+    public Long pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return data[toArrayIndex(position++)];
+            }
+        };
+    }
+
+    @Override
+    public LongArraySet descendingSet() {
+        return new LongArraySet(data, from, to, !isReversed, index);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet((long) fromElement, fromInclusive, (long) toElement, toInclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement, boolean inclusive) {
+        return headSet((long) toElement, inclusive);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet((long) fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return isReversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, Long toElement) {
+        return subSet((long) fromElement, true, (long) toElement, false);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement) {
+        return headSet((long) toElement, false);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement) {
+        return tailSet((long) fromElement, true);
+    }
+
+    private void checkEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && containsLong((Long) o);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.ifmo.rain.krotkov.arrayset;
+
+/**
+ * Search index keeping a sorted {@code long[]} in Eytzinger (breadth-first) order.
+ * Children of node {@code k} are {@code 2k} and {@code 2k + 1}, so the first levels of every search
+ * share a few cache lines. Java has no prefetch instruction, so on every step the search touches
+ * the first of the 8 descendants {@value #LOOKAHEAD} levels below, so the line holding it is loaded while
+ * the current comparisons are still in flight. The descendants are contiguous and take 64 bytes, but the array
+ * header and unknown alignment of the array may place some of them on the next line, which is not touched.
+ */
+class LongEytzingerIndex {
+    private static final int LOOKAHEAD = 3;
+    // always zero, but not a constant for the JIT compiler
+    private static int prefetchMask = 0;
+
+    private final long[] tree;
+    private final int prefetchLimit;
+
+    LongEytzingerIndex(long[] sorted) {
+        tree = new long[sorted.length + 1];
+        prefetchLimit = sorted.length >>> LOOKAHEAD;
+        fill(sorted, 1, 0);
+    }
+
+    private int fill(long[] sorted, int node, int rank) {
+        if (node < tree.length) {
+            rank = fill(sorted, 2 * node, rank);
+            tree[node] = sorted[rank++];
+            rank = fill(sorted, 2 * node + 1, rank);
+        }
+        return rank;
+    }
+
+    /**
+     * Returns position of {@code node} in the sorted array.
+     * Computed arithmetically: an array of ranks would cost one more cache miss per search.
+     */
+    private int rank(int node) {
+        int size = tree.length - 1;
+        int lastLevel = 31 - Integer.numberOfLeadingZeros(size);
+        int level = 31 - Integer.numberOfLeadingZeros(node);
+        // position of the node as if the last level were full
+        int position = ((2 * (node - (1 << level)) + 1) << (lastLevel - level)) - 1;
+        int presentLeaves = size - (1 << lastLevel) + 1;
+        return position - Math.max(0, (position + 1) / 2 - presentLeaves);
+    }
+
+    private int answer(int node, long touched) {
+        // drop the trailing "went right" steps and the last "went left" one to get the answer node
+        node >>= Integer.numberOfTrailingZeros(~node) + 1;
+        // touched values take part in the result so the look-ahead loads are not eliminated
+        return (node == 0 ? tree.length - 1 : rank(node)) + (int) (touched & prefetchMask);
+    }
+
+    /**
+     * Returns index of the first element not less than {@code value} in the sorted array.
+     */
+    int lowerBound(long value) {
+        int node = 1;
+        long touched = 0;
+        while (node < tree.length) {
+            if (node <= prefetchLimit) {
+                touched ^= tree[node << LOOKAHEAD];
+            }
+            node = 2 * node + (tree[node] < value ? 1 : 0);
+        }
+        return answer(node, touched);
+    }
+
+    /**
+     * Returns index of the first element greater than {@code value} in the sorted array.
+     */
+    int upperBound(long value) {
+        int node = 1;
+        long touched = 0;
+        while (node < tree.length) {
+            if (node <= prefetchLimit) {
+                touched ^= tree[node << LOOKAHEAD];
+            }
+            node = 2 * node + (tree[node] <= value ? 1 : 0);
+        }
+        return answer(node, touched);
+    }
+}
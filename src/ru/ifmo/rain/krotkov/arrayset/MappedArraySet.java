@@ -0,0 +1,248 @@
+package ru.ifmo.rain.krotkov.arrayset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only {@link ArraySet} of fixed-width keys stored in a memory-mapped file.
+ * Opening the set only maps the file, all queries read keys directly from the mapped buffers,
+ * so the set loads instantly and its keys stay out of the heap.
+ * <p>
+ * File layout: magic number ({@code int}), key width ({@code int}), number of keys ({@code long}),
+ * then keys in strictly ascending order. Files are produced by {@link #write}.
+ */
+public class MappedArraySet<T> extends ArraySet<T> {
+    private static final int MAGIC = 0x41534554;
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Fixed-width binary representation of keys.
+     */
+    public abstract static class KeyFormat<T> {
+        private final int width;
+        private final Comparator<? super T> comparator;
+
+        protected KeyFormat(int width, Comparator<? super T> comparator) {
+            this.width = width;
+            this.comparator = comparator;
+        }
+
+        /**
+         * Reads key at absolute {@code offset} of {@code buffer}.
+         */
+        protected abstract T read(ByteBuffer buffer, int offset);
+
+        /**
+         * Puts exactly {@code width} bytes representing {@code key} to {@code buffer}.
+         */
+        protected abstract void write(ByteBuffer buffer, T key);
+
+        /**
+         * Compares key at absolute {@code offset} of {@code buffer} with {@code key} by {@link #comparator()}.
+         * Searches call it for every probe, so formats should override it to compare in place
+         * instead of reading the key.
+         */
+        protected int compare(ByteBuffer buffer, int offset, T key) {
+            return ArraySet.compare(comparator, read(buffer, offset), key);
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+    }
+
+    public static final KeyFormat<Integer> INT = new KeyFormat<>(Integer.BYTES, null) {
+        @Override
+        protected Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        protected void write(ByteBuffer buffer, Integer key) {
+            buffer.putInt(key);
+        }
+
+        @Override
+        protected int compare(ByteBuffer buffer, int offset, Integer key) {
+            return Integer.compare(buffer.getInt(offset), key);
+        }
+    };
+
+    public static final KeyFormat<Long> LONG = new KeyFormat<>(Long.BYTES, null) {
+        @Override
+        protected Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        protected void write(ByteBuffer buffer, Long key) {
+            buffer.putLong(key);
+        }
+
+        @Override
+        protected int compare(ByteBuffer buffer, int offset, Long key) {
+            return Long.compare(buffer.getLong(offset), key);
+        }
+    };
+
+    /**
+     * Returns format of byte strings of length {@code width} compared as unsigned bytes.
+     */
+    public static KeyFormat<byte[]> bytes(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width must be positive");
+        }
+        return new KeyFormat<>(width, Arrays::compareUnsigned) {
+            @Override
+            protected byte[] read(ByteBuffer buffer, int offset) {
+                byte[] key = new byte[width];
+                buffer.get(offset, key);
+                return key;
+            }
+
+            @Override
+            protected int compare(ByteBuffer buffer, int offset, byte[] key) {
+                // same order as Arrays.compareUnsigned: the first differing byte, then the length
+                int common = Math.min(width, key.length);
+                for (int i = 0; i < common; i++) {
+                    int cmp = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return Integer.compare(width, key.length);
+            }
+
+            @Override
+            protected void write(ByteBuffer buffer, byte[] key) {
+                if (key.length != width) {
+                    throw new IllegalArgumentException("Key length must be " + width);
+                }
+                buffer.put(key);
+            }
+        };
+    }
+
+    private MappedArraySet(List<T> keys, KeyFormat<T> format) {
+        super(keys, format.comparator(), 0, keys.size(), false);
+    }
+
+    /**
+     * Keys of a mapped file. A single buffer can not be larger than 2 GiB, so the file is mapped by segments.
+     */
+    private static class MappedList<T> extends AbstractList<T> implements RandomAccess, SortedKeys<T> {
+        private final KeyFormat<T> format;
+        private final ByteBuffer[] segments;
+        private final int keysPerSegment;
+        private final int size;
+
+        MappedList(KeyFormat<T> format, ByteBuffer[] segments, int keysPerSegment, int size) {
+            this.format = format;
+            this.segments = segments;
+            this.keysPerSegment = keysPerSegment;
+            this.size = size;
+        }
+
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            return format.read(segments[index / keysPerSegment], index % keysPerSegment * format.width());
+        }
+
+        @Override
+        public int compareAt(int index, T key) {
+            return format.compare(segments[index / keysPerSegment], index % keysPerSegment * format.width(), key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Maps set stored in {@code file} by {@link #write}.
+     *
+     * @throws IOException if the file can not be read or has wrong format
+     */
+    public static <T> MappedArraySet<T> open(Path file, KeyFormat<T> format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a mapped set file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a mapped set file: " + file);
+            }
+            if (header.getInt() != format.width()) {
+                throw new IOException("Key width of " + file + " does not match the format");
+            }
+            long size = header.getLong();
+            if (size < 0 || size > Integer.MAX_VALUE || channel.size() != HEADER_SIZE + size * format.width()) {
+                throw new IOException("Corrupted mapped set file: " + file);
+            }
+
+            int keysPerSegment = Integer.MAX_VALUE / format.width();
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + keysPerSegment - 1) / keysPerSegment)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = (long) i * keysPerSegment;
+                long keys = Math.min(keysPerSegment, size - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * format.width(), keys * format.width());
+            }
+            return new MappedArraySet<>(new MappedList<>(format, segments, keysPerSegment, (int) size), format);
+        }
+    }
+
+    /**
+     * Writes {@code keys} to {@code file} so that it can be opened by {@link #open}.
+     *
+     * @throws IllegalArgumentException if {@code keys} are not strictly ascending
+     * @throws IOException if the file can not be written
+     */
+    public static <T> void write(Path file, KeyFormat<T> format, Iterable<? extends T> keys) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, format.width()));
+            buffer.position(HEADER_SIZE);
+
+            long size = 0;
+            T previous = null;
+            for (T key : keys) {
+                if (size > 0 && compare(format.comparator(), previous, key) >= 0) {
+                    throw new IllegalArgumentException("Keys must be strictly ascending");
+                }
+                if (size == Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many keys: more than " + Integer.MAX_VALUE);
+                }
+                if (buffer.remaining() < format.width()) {
+                    flush(channel, buffer);
+                }
+                format.write(buffer, key);
+                previous = key;
+                size++;
+            }
+            flush(channel, buffer);
+
+            buffer.putInt(MAGIC).putInt(format.width()).putLong(size).flip();
+            channel.write(buffer, 0);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
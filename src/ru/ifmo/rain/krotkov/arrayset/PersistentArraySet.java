@@ -0,0 +1,415 @@
+package ru.ifmo.rain.krotkov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set which can produce updated versions of itself.
+ * {@link #with} and {@link #without} return a new version in {@code O(log n)}: elements are kept in a B+-tree
+ * of small arrays and only the path from the root to the changed leaf is copied, the rest is shared.
+ * Versions are never modified, so any number of threads may read any of them without locking.
+ */
+public class PersistentArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int CAPACITY = 64;
+    private static final Node EMPTY = new Node(new Object[0], true);
+
+    private final Node root;
+    private final Comparator<? super T> comparator;
+    private final Comparator<? super T> order;
+
+    public PersistentArraySet() {
+        this(EMPTY, null);
+    }
+
+    public PersistentArraySet(Comparator<? super T> comparator) {
+        this(EMPTY, comparator);
+    }
+
+    public PersistentArraySet(Collection<? extends T> collection) {
+        this(collection, null);
+    }
+
+    public PersistentArraySet(Collection<? extends T> other, Comparator<? super T> comparator) {
+        this(build(new ArraySet<>(other, comparator).toArray()), comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PersistentArraySet(Node root, Comparator<? super T> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+        order = comparator == null ? (Comparator<? super T>) Comparator.naturalOrder() : comparator;
+    }
+
+    private static final class Node {
+        // keys of a leaf or children of an inner node
+        final Object[] items;
+        // inner node only: number of keys in children 0..i
+        final int[] counts;
+        // inner node only: the greatest key of each child
+        final Object[] lasts;
+
+        Node(Object[] items, boolean isLeaf) {
+            this.items = items;
+            if (isLeaf) {
+                counts = null;
+                lasts = null;
+            } else {
+                counts = new int[items.length];
+                lasts = new Object[items.length];
+                int total = 0;
+                for (int i = 0; i < items.length; i++) {
+                    Node child = (Node) items[i];
+                    total += child.size();
+                    counts[i] = total;
+                    lasts[i] = child.last();
+                }
+            }
+        }
+
+        boolean isLeaf() {
+            return counts == null;
+        }
+
+        int size() {
+            return isLeaf() ? items.length : counts[counts.length - 1];
+        }
+
+        Object last() {
+            return isLeaf() ? items[items.length - 1] : lasts[lasts.length - 1];
+        }
+
+        int childOf(int rank) {
+            int left = -1;
+            int right = counts.length - 1;
+            while (right - left > 1) {
+                int middle = (left + right) >>> 1;
+                if (counts[middle] > rank) {
+                    right = middle;
+                } else {
+                    left = middle;
+                }
+            }
+            return right;
+        }
+
+        int offset(int child) {
+            return child > 0 ? counts[child - 1] : 0;
+        }
+    }
+
+    private static Node build(Object[] sorted) {
+        List<Node> level = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i += CAPACITY / 2) {
+            level.add(new Node(Arrays.copyOfRange(sorted, i, Math.min(sorted.length, i + CAPACITY / 2)), true));
+        }
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += CAPACITY / 2) {
+                parents.add(new Node(level.subList(i, Math.min(level.size(), i + CAPACITY / 2)).toArray(), false));
+            }
+            level = parents;
+        }
+        return level.isEmpty() ? EMPTY : level.get(0);
+    }
+
+    private static Object[] replaced(Object[] items, int from, int count, Object... replacement) {
+        Object[] result = new Object[items.length - count + replacement.length];
+        System.arraycopy(items, 0, result, 0, from);
+        System.arraycopy(replacement, 0, result, from, replacement.length);
+        System.arraycopy(items, from + count, result, from + replacement.length, items.length - from - count);
+        return result;
+    }
+
+    private static Node[] split(Node node) {
+        if (node.items.length <= CAPACITY) {
+            return new Node[]{node};
+        }
+        int half = node.items.length / 2;
+        return new Node[]{
+                new Node(Arrays.copyOfRange(node.items, 0, half), node.isLeaf()),
+                new Node(Arrays.copyOfRange(node.items, half, node.items.length), node.isLeaf())
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private int firstNotBefore(Object[] keys, Object elem, boolean strict) {
+        int left = -1;
+        int right = keys.length;
+        while (right - left > 1) {
+            int middle = (left + right) >>> 1;
+            int cmp = order.compare((T) keys[middle], (T) elem);
+            if (cmp < 0 || strict && cmp == 0) {
+                left = middle;
+            } else {
+                right = middle;
+            }
+        }
+        return right;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node[] insert(Node node, T elem) {
+        int index = firstNotBefore(node.isLeaf() ? node.items : node.lasts, elem, false);
+        if (node.isLeaf()) {
+            if (index < node.items.length && order.compare(elem, (T) node.items[index]) == 0) {
+                return null;
+            }
+            return split(new Node(replaced(node.items, index, 0, elem), true));
+        }
+        int child = Math.min(index, node.items.length - 1);
+        Node[] replacement = insert((Node) node.items[child], elem);
+        if (replacement == null) {
+            return null;
+        }
+        return split(new Node(replaced(node.items, child, 1, (Object[]) replacement), false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node remove(Node node, T elem) {
+        int index = firstNotBefore(node.isLeaf() ? node.items : node.lasts, elem, false);
+        if (index == node.items.length) {
+            return node;
+        }
+        if (node.isLeaf()) {
+            if (order.compare(elem, (T) node.items[index]) != 0) {
+                return node;
+            }
+            return node.items.length == 1 ? null : new Node(replaced(node.items, index, 1), true);
+        }
+
+        Node old = (Node) node.items[index];
+        Node updated = remove(old, elem);
+        if (updated == old) {
+            return node;
+        }
+        if (updated == null) {
+            return node.items.length == 1 ? null : new Node(replaced(node.items, index, 1), false);
+        }
+        if (updated.items.length < CAPACITY / 4 && node.items.length > 1) {
+            // merge with a neighbour and split again if the result is too large
+            int left = index > 0 ? index - 1 : index;
+            Node first = left == index ? updated : (Node) node.items[left];
+            Node second = left == index ? (Node) node.items[index + 1] : updated;
+            Object[] items = replaced(first.items, first.items.length, 0, second.items);
+            return new Node(replaced(node.items, left, 2, (Object[]) split(new Node(items, first.isLeaf()))), false);
+        }
+        return new Node(replaced(node.items, index, 1, updated), false);
+    }
+
+    /**
+     * Returns version of this set containing {@code elem}, or this set if it already contains it.
+     */
+    public PersistentArraySet<T> with(T elem) {
+        // like TreeSet, reject an element which is null or not comparable even if it is compared with nothing
+        order.compare(elem, elem);
+        Node[] nodes = insert(root, elem);
+        if (nodes == null) {
+            return this;
+        }
+        return new PersistentArraySet<>(nodes.length == 1 ? nodes[0] : new Node(nodes, false), comparator);
+    }
+
+    /**
+     * Returns version of this set without {@code elem}, or this set if it does not contain it.
+     */
+    public PersistentArraySet<T> without(T elem) {
+        Node updated = remove(root, elem);
+        if (updated == root) {
+            return this;
+        }
+        if (updated == null) {
+            updated = EMPTY;
+        }
+        while (!updated.isLeaf() && updated.items.length == 1) {
+            updated = (Node) updated.items[0];
+        }
+        return new PersistentArraySet<>(updated, comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int rank) {
+        Node node = root;
+        while (!node.isLeaf()) {
+            int child = node.childOf(rank);
+            rank -= node.offset(child);
+            node = (Node) node.items[child];
+        }
+        return (T) node.items[rank];
+    }
+
+    private int bound(Object elem, boolean strict) {
+        Node node = root;
+        int rank = 0;
+        while (!node.isLeaf()) {
+            int child = firstNotBefore(node.lasts, elem, strict);
+            if (child == node.items.length) {
+                return rank + node.size();
+            }
+            rank += node.offset(child);
+            node = (Node) node.items[child];
+        }
+        return rank + firstNotBefore(node.items, elem, strict);
+    }
+
+    private T getOrNull(int rank) {
+        return 0 <= rank && rank < size() ? get(rank) : null;
+    }
+
+    @Override
+    public T lower(T t) {
+        return getOrNull(bound(t, false) - 1);
+    }
+
+    @Override
+    public T floor(T t) {
+        return getOrNull(bound(t, true) - 1);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return getOrNull(bound(t, false));
+    }
+
+    @Override
+    public T higher(T t) {
+        return getOrNull(bound(t, true));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int rank = 0;
+            private Object[] leaf = EMPTY.items;
+            private int offset = 0;
+
+            @Override
+            public boolean hasNext() {
+                return rank < size();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (offset == leaf.length) {
+                    Node node = root;
+                    offset = rank;
+                    while (!node.isLeaf()) {
+                        int child = node.childOf(offset);
+                        offset -= node.offset(child);
+                        node = (Node) node.items[child];
+                    }
+                    leaf = node.items;
+                }
+                rank++;
+                return (T) leaf[offset++];
+            }
+        };
+    }
+
+    private class Elements extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size());
+            return PersistentArraySet.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return PersistentArraySet.this.size();
+        }
+    }
+
+    /**
+     * Returns {@link ArraySet} view of this version. Views of this set are created through it.
+     */
+    private ArraySet<T> asArraySet() {
+        return ArraySet.wrapSorted(new Elements(), comparator);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return asArraySet().descendingSet();
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return asArraySet().subSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return asArraySet().headSet(toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return asArraySet().tailSet(fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private void checkEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public T first() {
+        checkEmpty();
+        return get(0);
+    }
+
+    @Override
+    public T last() {
+        checkEmpty();
+        return get(size() - 1);
+    }
+
+    @Override
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        int rank = bound(o, false);
+        return rank < size() && order.compare(get(rank), (T) o) == 0;
+    }
+}
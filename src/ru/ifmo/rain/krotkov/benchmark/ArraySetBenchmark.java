@@ -0,0 +1,95 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import ru.ifmo.rain.krotkov.arrayset.ArraySet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiFunction;
+
+/**
+ * Compares {@link ArraySet} navigation API with {@link TreeSet} and {@link ConcurrentSkipListSet}
+ * for sizes from 10 to the given maximum (10<sup>7</sup> by default), with natural and custom comparators.
+ * <p>
+ * Usage: {@code ArraySetBenchmark [maxSize]}
+ */
+public class ArraySetBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    private static final Map<String, BiFunction<Collection<Integer>, Comparator<Integer>, NavigableSet<Integer>>> SETS =
+            new LinkedHashMap<>();
+
+    static {
+        SETS.put("ArraySet", ArraySet::new);
+        SETS.put("TreeSet", (elements, comparator) -> {
+            NavigableSet<Integer> set = new TreeSet<>(comparator);
+            set.addAll(elements);
+            return set;
+        });
+        SETS.put("ConcurrentSkipListSet", (elements, comparator) -> {
+            NavigableSet<Integer> set = new ConcurrentSkipListSet<>(comparator);
+            set.addAll(elements);
+            return set;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Random random = new Random(8045);
+
+        for (int size = 10; size <= maxSize; size *= 10) {
+            List<Integer> elements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                elements.add(2 * i);
+            }
+            Collections.shuffle(elements, random);
+
+            // about a half of queries are absent in the set
+            Integer[] keys = new Integer[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                keys[i] = random.nextInt(2 * size);
+            }
+
+            for (boolean custom : new boolean[]{false, true}) {
+                Comparator<Integer> comparator = custom ? (a, b) -> Integer.compare(a, b) : null;
+                for (Map.Entry<String, BiFunction<Collection<Integer>, Comparator<Integer>, NavigableSet<Integer>>> entry
+                        : SETS.entrySet()) {
+                    String prefix = String.format("%s[%d, %s].", entry.getKey(), size, custom ? "custom" : "natural");
+                    benchmark(prefix, elements, keys, comparator, entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static void benchmark(String prefix, List<Integer> elements, Integer[] keys, Comparator<Integer> comparator,
+                                  BiFunction<Collection<Integer>, Comparator<Integer>, NavigableSet<Integer>> factory)
+            throws Exception {
+        NavigableSet<Integer> set = factory.apply(elements, comparator);
+        int[] next = {0};
+
+        Benchmark.run(prefix + "construction", () -> factory.apply(elements, comparator));
+        Benchmark.run(prefix + "contains", () -> set.contains(keys[next[0]++ & (QUERIES - 1)]));
+        Benchmark.run(prefix + "floor", () -> set.floor(keys[next[0]++ & (QUERIES - 1)]));
+        Benchmark.run(prefix + "ceiling", () -> set.ceiling(keys[next[0]++ & (QUERIES - 1)]));
+        Benchmark.run(prefix + "headSet", () -> set.headSet(keys[next[0]++ & (QUERIES - 1)], true));
+        Benchmark.run(prefix + "tailSet", () -> set.tailSet(keys[next[0]++ & (QUERIES - 1)], true));
+        Benchmark.run(prefix + "subSet", () -> {
+            Integer first = keys[next[0]++ & (QUERIES - 1)];
+            Integer second = keys[next[0]++ & (QUERIES - 1)];
+            return first <= second ? set.subSet(first, true, second, true) : set.subSet(second, true, first, true);
+        });
+        Benchmark.run(prefix + "descendingChain", () -> {
+            Integer first = keys[next[0]++ & (QUERIES - 1)];
+            Integer second = keys[next[0]++ & (QUERIES - 1)];
+            Integer low = Math.min(first, second);
+            Integer high = Math.max(first, second);
+            return set.descendingSet().headSet(low, true).descendingSet().headSet(high, true).floor(high);
+        });
+        Benchmark.run(prefix + "iteration", () -> {
+            long sum = 0;
+            for (Integer element : set) {
+                sum += element;
+            }
+            return sum;
+        });
+    }
+}
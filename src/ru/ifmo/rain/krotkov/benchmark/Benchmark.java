@@ -0,0 +1,66 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Minimal benchmark harness.
+ * Every operation is run for several warmup and then several measurement iterations of a fixed duration,
+ * average time per operation over measurement iterations is printed with its standard deviation.
+ * Results of operations are written to a volatile field, so the JIT compiler can not eliminate them.
+ * <p>
+ * Iteration duration in milliseconds may be set by {@code benchmark.iteration.ms} system property.
+ */
+public final class Benchmark {
+    private static final long ITERATION_NANOS = Long.getLong("benchmark.iteration.ms", 300) * 1_000_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    private static volatile Object sink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Benchmarked operation. Returned value is consumed by the harness.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Measures {@code operation} and prints result in {@code ns/op} labeled with {@code name}.
+     *
+     * @return average time of a single operation in nanoseconds
+     */
+    public static double run(String name, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+        double[] results = new double[MEASUREMENT_ITERATIONS];
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            results[i] = iteration(operation);
+        }
+
+        double mean = Arrays.stream(results).average().orElse(0);
+        double deviation = Math.sqrt(Arrays.stream(results).map(x -> (x - mean) * (x - mean)).sum() / results.length);
+        System.out.printf("%-70s %14.1f +- %10.1f ns/op%n", name, mean, deviation);
+        return mean;
+    }
+
+    private static double iteration(Operation operation) throws Exception {
+        long operations = 0;
+        long batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (long i = 0; i < batch; i++) {
+                sink = operation.run();
+            }
+            operations += batch;
+            batch *= 2;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        return (double) elapsed / operations;
+    }
+}
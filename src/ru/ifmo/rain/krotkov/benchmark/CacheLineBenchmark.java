@@ -0,0 +1,41 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import ru.ifmo.rain.krotkov.concurrent.IterativeParallelism;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures scaling of {@link IterativeParallelism} operations writing arrays indexed like their input
+ * for 1 to the given maximum number of threads (64 by default), where adjacent blocks of different threads
+ * may share a cache line at their boundary.
+ * Meaningful on machines with at least as many cores as threads.
+ * <p>
+ * Usage: {@code CacheLineBenchmark [maxThreads [size]]}
+ */
+public class CacheLineBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 22;
+
+        Random random = new Random(8045);
+        int[] values = random.ints(size).toArray();
+        List<Integer> list = random.ints(size).boxed().toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+        try {
+            IterativeParallelism ip = new IterativeParallelism(executor);
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                int t = threads;
+                String prefix = String.format("[%d, %d].", size, threads);
+                Benchmark.run("int[]" + prefix + "prefixSums", () -> ip.prefixSums(t, values));
+                Benchmark.run("int[]" + prefix + "filter", () -> ip.filter(t, values, x -> (x & 1) == 0));
+                Benchmark.run("list" + prefix + "map", () -> ip.map(t, list, x -> x));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
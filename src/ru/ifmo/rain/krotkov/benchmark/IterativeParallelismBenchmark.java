@@ -0,0 +1,73 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
+import ru.ifmo.rain.krotkov.concurrent.ForkJoinParallelism;
+import ru.ifmo.rain.krotkov.concurrent.IterativeParallelism;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link IterativeParallelism} for threads started per call and for threads reused from executors,
+ * and {@link ForkJoinParallelism}: per-call overhead on small lists compared to a sequential loop,
+ * operations on a {@link LinkedList}, short-circuiting of {@code any} with a match at the first percent
+ * of the list, and load balancing when the first eighth of elements is much more expensive than the rest.
+ * <p>
+ * Usage: {@code IterativeParallelismBenchmark [threads]}
+ */
+public class IterativeParallelismBenchmark {
+    private static final int SKEWED_MAX_SIZE = 10_000;
+    private static final long SPIN_NANOS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        ExecutorService fixed = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, ListIP> implementations = new LinkedHashMap<>();
+            implementations.put("IterativeParallelism(new threads)", new IterativeParallelism());
+            implementations.put("IterativeParallelism(fixed pool)", new IterativeParallelism(fixed));
+            implementations.put("IterativeParallelism(common pool)", new IterativeParallelism(ForkJoinPool.commonPool()));
+            implementations.put("ForkJoinParallelism", new ForkJoinParallelism());
+
+            Random random = new Random(8045);
+            for (int size = 10; size <= 100_000; size *= 10) {
+                List<Integer> list = random.ints(size).boxed().toList();
+                List<Integer> linked = new LinkedList<>(list);
+                // only the first eighth of elements is negative
+                int expensive = size / 8;
+                List<Integer> skewed = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    skewed.add(i < expensive ? -1 - random.nextInt(Integer.MAX_VALUE) : random.nextInt(Integer.MAX_VALUE));
+                }
+                Integer nearFront = list.get(size / 100);
+                Benchmark.run(String.format("sequential[%d].maximum", size),
+                        () -> list.stream().max(Comparator.naturalOrder()).orElse(null));
+                for (Map.Entry<String, ListIP> entry : implementations.entrySet()) {
+                    String prefix = String.format("%s[%d, %d].", entry.getKey(), size, threads);
+                    ListIP ip = entry.getValue();
+                    Benchmark.run(prefix + "maximum", () -> ip.maximum(threads, list, Comparator.naturalOrder()));
+                    Benchmark.run(prefix + "filter", () -> ip.filter(threads, list, x -> x % 3 == 0));
+                    Benchmark.run(prefix + "linkedMaximum", () -> ip.maximum(threads, linked, Comparator.naturalOrder()));
+                    Benchmark.run(prefix + "join", () -> ip.join(threads, list));
+                    Benchmark.run(prefix + "anyNearFront", () -> ip.any(threads, list, x -> x == nearFront));
+                    if (size <= SKEWED_MAX_SIZE) {
+                        Benchmark.run(prefix + "skewedFilter", () -> ip.filter(threads, skewed,
+                                x -> x < 0 ? spin(x) : x % 3 == 0));
+                    }
+                }
+            }
+        } finally {
+            fixed.shutdown();
+        }
+    }
+
+    private static boolean spin(int x) {
+        long end = System.nanoTime() + SPIN_NANOS;
+        while (System.nanoTime() < end) {
+            x = x * 31 + 7;
+        }
+        return x % 3 == 0;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import ru.ifmo.rain.krotkov.mapper.ParallelMapperImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Measures throughput of {@link ParallelMapperImpl} on tiny tasks, where the cost of passing a task
+ * through the queue dominates, for 1 to the given maximum number of worker threads (64 by default).
+ * Tasks are submitted by a single caller and by as many concurrent callers as there are workers.
+ * Results are per mapped element. Meaningful on machines with at least as many cores as threads.
+ * <p>
+ * Also measures latency of a small mapping, idle and while a large mapping occupies all workers,
+ * with default and larger weights.
+ * <p>
+ * Usage: {@code ParallelMapperBenchmark [maxThreads [size]]}
+ */
+public class ParallelMapperBenchmark {
+    private static final int SMALL_SIZE = 16;
+    private static final int LARGE_WEIGHT = 8;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16;
+
+        List<Integer> list = IntStream.range(0, size).boxed().toList();
+        ExecutorService callers = Executors.newFixedThreadPool(maxThreads);
+        try {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                int t = threads;
+                List<List<Integer>> parts = new ArrayList<>(t);
+                for (int i = 0; i < t; i++) {
+                    parts.add(list.subList(size / t * i, i == t - 1 ? size : size / t * (i + 1)));
+                }
+
+                try (ParallelMapperImpl mapper = new ParallelMapperImpl(t)) {
+                    String prefix = String.format("ParallelMapperImpl[%d, %d].", size, t);
+                    perElement(prefix + "singleCaller", size, () -> mapper.map(x -> x + 1, list));
+                    perElement(prefix + "concurrentCallers", size, () -> {
+                        List<Future<List<Integer>>> futures = new ArrayList<>(t);
+                        for (List<Integer> part : parts) {
+                            futures.add(callers.submit((Callable<List<Integer>>) () -> mapper.map(x -> x + 1, part)));
+                        }
+                        int mapped = 0;
+                        for (Future<List<Integer>> future : futures) {
+                            mapped += future.get().size();
+                        }
+                        return mapped;
+                    });
+                    smallUnderLoad(prefix, mapper, list.subList(0, SMALL_SIZE), size * 16);
+                }
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    private static void smallUnderLoad(String prefix, ParallelMapperImpl mapper, List<Integer> small, int loadSize)
+            throws Exception {
+        Benchmark.run(prefix + "small", () -> mapper.map(x -> x + 1, small));
+
+        List<Integer> load = Collections.nCopies(loadSize, 1);
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread background = new Thread(() -> {
+            while (!stop.get()) {
+                mapper.mapAsync(x -> x + 1, load).join();
+            }
+        });
+        background.start();
+        try {
+            Benchmark.run(prefix + "smallUnderLoad", () -> mapper.map(x -> x + 1, small));
+            Benchmark.run(prefix + "smallUnderLoad(weight " + LARGE_WEIGHT + ")",
+                    () -> mapper.mapAsync(x -> x + 1, small, LARGE_WEIGHT).join());
+        } finally {
+            stop.set(true);
+            background.join();
+        }
+    }
+
+    private static void perElement(String name, int size, Benchmark.Operation operation) throws Exception {
+        double nanos = Benchmark.run(name, operation);
+        System.out.printf("%-70s %14.1f ns/element%n", name + " per element", nanos / size);
+    }
+}
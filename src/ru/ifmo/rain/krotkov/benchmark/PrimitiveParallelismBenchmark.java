@@ -0,0 +1,39 @@
+package ru.ifmo.rain.krotkov.benchmark;
+
+import ru.ifmo.rain.krotkov.concurrent.IterativeParallelism;
+import ru.ifmo.rain.krotkov.concurrent.Monoid;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares operations of {@link IterativeParallelism} over {@code int[]} with the same operations
+ * over boxed {@code List<Integer>}, for sizes from 10<sup>3</sup> to the given maximum (10<sup>7</sup> by default).
+ * <p>
+ * Usage: {@code PrimitiveParallelismBenchmark [threads [maxSize]]}
+ */
+public class PrimitiveParallelismBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        IterativeParallelism ip = new IterativeParallelism(ForkJoinPool.commonPool());
+        Monoid<Long> sum = new Monoid<>(0L, Long::sum);
+
+        Random random = new Random(8045);
+        for (int size = 1000; size <= maxSize; size *= 10) {
+            int[] values = random.ints(size).toArray();
+            List<Integer> list = random.ints(size).boxed().toList();
+
+            String prefix = String.format("[%d, %d].", size, threads);
+            Benchmark.run("boxed" + prefix + "maximum", () -> ip.maximum(threads, list, Comparator.naturalOrder()));
+            Benchmark.run("int[]" + prefix + "max", () -> ip.max(threads, values));
+            Benchmark.run("boxed" + prefix + "sum", () -> ip.mapReduce(threads, list, Integer::longValue, sum));
+            Benchmark.run("int[]" + prefix + "sum", () -> ip.sum(threads, values));
+            Benchmark.run("boxed" + prefix + "filter", () -> ip.filter(threads, list, x -> x % 3 == 0));
+            Benchmark.run("int[]" + prefix + "filter", () -> ip.filter(threads, values, x -> x % 3 == 0));
+            Benchmark.run("int[]" + prefix + "prefixSums", () -> ip.prefixSums(threads, values));
+        }
+    }
+}
@@ -0,0 +1,709 @@
+package ru.ifmo.rain.krotkov.concurrent;
+
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link ListIP} operations expressed as a map of list blocks followed by a reduce of block results.
+ * Implementations decide how the list is split and where blocks are processed.
+ */
+abstract class AbstractParallelism implements ListIP {
+    /**
+     * Computes result for the range {@code [from, to)} of indices.
+     */
+    @FunctionalInterface
+    protected interface Block<R> {
+        R apply(int from, int to);
+    }
+
+    /**
+     * Applies {@code block} to consecutive ranges covering {@code [0, size)} and {@code reduce} to results
+     * of the ranges in their order.
+     */
+    protected abstract <R> R countBlocks(int threadsNum, int size, Block<? extends R> block,
+                                         Function<Stream<? extends R>, ? extends R> reduce)
+            throws InterruptedException;
+
+    /**
+     * Returns start of block {@code block} of {@code blocksNum} blocks of nearly equal size covering
+     * {@code [from, to)}, or {@code to} for {@code block == blocksNum}.
+     */
+    protected static int blockStart(int from, int to, int block, int blocksNum) {
+        return from + (int) ((long) (to - from) * block / blocksNum);
+    }
+
+    /**
+     * Returns {@code list} itself if it supports fast random access, or its copy otherwise.
+     * Every block of a sequential list would walk it from an end to the block start,
+     * so such a list is copied in a single pass instead.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> randomAccess(List<T> list) {
+        return list instanceof RandomAccess ? list : (List<T>) Arrays.asList(list.toArray());
+    }
+
+    private <T, R> R countFunc(int threadsNum, List<? extends T> list,
+                               Function<Stream<? extends T>, ? extends R> map,
+                               Function<Stream<? extends R>, ? extends R> reduce) throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        return countBlocks(threadsNum, elements.size(),
+                (from, to) -> map.apply(elements.subList(from, to).stream()), reduce);
+    }
+
+    /**
+     * Every block turns its range into a list of strings: elements which are strings already are referenced
+     * as they are, runs of other elements are appended to a builder which is turned into a string
+     * by the block itself, in parallel with other blocks. Pieces are then concatenated by
+     * {@link String#join}, which sizes the result once and copies every piece into it once,
+     * keeping Latin-1 text one byte per char.
+     *
+     * @throws NullPointerException if {@code list} contains {@code null}, as {@link Object#toString} would
+     */
+    @Override
+    public String join(int i, List<?> list) throws InterruptedException {
+        final List<?> elements = randomAccess(list);
+        final List<String> pieces = countBlocks(i, elements.size(), (from, to) -> {
+            final List<String> blockPieces = new ArrayList<>();
+            final StringBuilder run = new StringBuilder();
+            for (Object element : elements.subList(from, to)) {
+                if (element instanceof String) {
+                    endRun(run, blockPieces);
+                    blockPieces.add((String) element);
+                } else {
+                    run.append(Objects.requireNonNull(element));
+                }
+            }
+            endRun(run, blockPieces);
+            return blockPieces;
+        }, AbstractParallelism::concat);
+        return String.join("", pieces);
+    }
+
+    private static void endRun(StringBuilder run, List<String> pieces) {
+        if (run.length() > 0) {
+            pieces.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Tests every element once and writes matching ones directly into the resulting array.
+     * The first pass marks matching elements and counts them per block,
+     * the second one copies marked elements of every block starting from the total count of preceding blocks.
+     *
+     * @return fixed-size list of matching elements
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> filter(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        final boolean[] matches = new boolean[elements.size()];
+        // {from, to, number of matching elements} of every block of the first pass
+        final List<int[]> blocks = countBlocks(i, elements.size(), (from, to) -> {
+            int count = 0;
+            int j = from;
+            for (T element : elements.subList(from, to)) {
+                if (predicate.test(element)) {
+                    matches[j] = true;
+                    count++;
+                }
+                j++;
+            }
+            return List.of(new int[]{from, to, count});
+        }, AbstractParallelism::concat);
+
+        final int[] offsets = offsets(blocks);
+
+        final Object[] result = new Object[offsets[blocks.size()]];
+        countBlocks(i, blocks.size(), (from, to) -> {
+            int position = offsets[from];
+            int j = blocks.get(from)[0];
+            for (T element : elements.subList(j, blocks.get(to - 1)[1])) {
+                if (matches[j++]) {
+                    result[position++] = element;
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return (List<T>) Arrays.asList(result);
+    }
+
+    /**
+     * Every block writes mapped elements directly into its range of the resulting array.
+     *
+     * @return fixed-size list of mapped elements
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, U> List<U> map(int i, List<? extends T> list, Function<? super T, ? extends U> function) throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        final Object[] result = new Object[elements.size()];
+        countBlocks(i, elements.size(), (from, to) -> {
+            int j = from;
+            for (T element : elements.subList(from, to)) {
+                result[j++] = function.apply(element);
+            }
+            return null;
+        }, (x) -> null);
+        return (List<U>) Arrays.asList(result);
+    }
+
+    private static <T> List<T> concat(Stream<? extends List<T>> lists) {
+        return lists.flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns prefix sums of the last components of {@code blocks}.
+     */
+    private static int[] offsets(List<int[]> blocks) {
+        final int[] offsets = new int[blocks.size() + 1];
+        for (int j = 0; j < blocks.size(); j++) {
+            offsets[j + 1] = Math.addExact(offsets[j], blocks.get(j)[2]);
+        }
+        return offsets;
+    }
+
+    @Override
+    public <T> T maximum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        final Function<Stream<? extends T>, ? extends T> countMax = x -> x.max(comparator).orElse(null);
+        return countFunc(i, list, countMax, countMax);
+    }
+
+    @Override
+    public <T> T minimum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        final Function<Stream<? extends T>, ? extends T> countMin = x -> x.min(comparator).orElse(null);
+        return countFunc(i, list, countMin, countMin);
+    }
+
+    @Override
+    public <T> boolean all(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        return !any(i, list, predicate.negate());
+    }
+
+    /**
+     * Once any block finds a matching element, the others see the shared flag and stop at their next element.
+     */
+    @Override
+    public <T> boolean any(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        final AtomicBoolean found = new AtomicBoolean();
+        return countFunc(i, list,
+                (x) -> x.anyMatch((y) -> found.get() || predicate.test(y) && mark(found)),
+                (x) -> x.anyMatch((y) -> y));
+    }
+
+    private static boolean mark(AtomicBoolean flag) {
+        flag.set(true);
+        return true;
+    }
+
+    /**
+     * Reduces elements of {@code list} with associative {@code operator}.
+     */
+    public <T> T reduce(int i, List<? extends T> list, T identity, BinaryOperator<T> operator)
+            throws InterruptedException {
+        return mapReduce(i, list, Function.identity(), new Monoid<>(identity, operator));
+    }
+
+    /**
+     * Maps elements of {@code list} with {@code lift} and reduces the results with {@code monoid}.
+     */
+    public <T, R> R mapReduce(int i, List<? extends T> list, Function<? super T, ? extends R> lift, Monoid<R> monoid)
+            throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        return countBlocks(i, elements.size(), (from, to) -> {
+            R result = monoid.getIdentity();
+            for (T element : elements.subList(from, to)) {
+                result = monoid.getOperator().apply(result, lift.apply(element));
+            }
+            return result;
+        }, (x) -> x.collect(Collectors.reducing(monoid.getIdentity(), monoid.getOperator())));
+    }
+
+    /**
+     * Returns number of elements of {@code list} satisfying {@code predicate}.
+     */
+    public <T> int count(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        return countBlocks(i, elements.size(), (from, to) -> {
+            int count = 0;
+            for (T element : elements.subList(from, to)) {
+                if (predicate.test(element)) {
+                    count++;
+                }
+            }
+            return count;
+        }, (x) -> x.mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Stable merge sort: blocks are copied to a single array and sorted there,
+     * then sorted runs are merged pairwise, merges of every round are done in parallel.
+     * A {@code null} comparator means natural order, as in {@link List#sort}.
+     *
+     * @return fixed-size sorted list
+     * @throws ClassCastException if {@code comparator} is {@code null} and elements are not mutually comparable
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> sort(int i, List<? extends T> list, Comparator<? super T> comparator)
+            throws InterruptedException {
+        final Comparator<? super T> order = comparator != null
+                ? comparator
+                : (a, b) -> ((Comparable<Object>) a).compareTo(b);
+        final List<? extends T> elements = randomAccess(list);
+        final Object[] array = new Object[elements.size()];
+        // {from, to} of every sorted run
+        List<int[]> runs = countBlocks(i, elements.size(), (from, to) -> {
+            int j = from;
+            for (T element : elements.subList(from, to)) {
+                array[j++] = element;
+            }
+            Arrays.sort((T[]) array, from, to, order);
+            return List.of(new int[]{from, to});
+        }, AbstractParallelism::concat);
+
+        Object[] source = array;
+        Object[] target = new Object[array.length];
+        while (runs.size() > 1) {
+            final Object[] from = source;
+            final Object[] to = target;
+            final List<int[]> pairs = runs;
+            runs = countBlocks(i, (pairs.size() + 1) / 2, (left, right) -> {
+                final List<int[]> merged = new ArrayList<>();
+                for (int j = 2 * left; j < Math.min(2 * right, pairs.size()); j += 2) {
+                    final int start = pairs.get(j)[0];
+                    final int end = pairs.get(Math.min(j + 1, pairs.size() - 1))[1];
+                    merge((T[]) from, start, pairs.get(j)[1], end, (T[]) to, order);
+                    merged.add(new int[]{start, end});
+                }
+                return merged;
+            }, AbstractParallelism::concat);
+            source = to;
+            target = from;
+        }
+        return (List<T>) Arrays.asList(source);
+    }
+
+    /**
+     * Merges sorted ranges {@code [left, middle)} and {@code [middle, right)} of {@code from}
+     * into the same positions of {@code to}, taking the left element of equal ones first.
+     */
+    private static <T> void merge(T[] from, int left, int middle, int right, T[] to, Comparator<? super T> comparator) {
+        int i = left;
+        int j = middle;
+        for (int k = left; k < right; k++) {
+            if (j == right || i < middle && comparator.compare(from[j], from[i]) >= 0) {
+                to[k] = from[i++];
+            } else {
+                to[k] = from[j++];
+            }
+        }
+    }
+
+    /**
+     * Groups elements of {@code list} by keys returned by {@code classifier}.
+     * Every block groups its range on its own, then groups are concatenated in the order of blocks,
+     * so elements of every group keep their order in {@code list}.
+     *
+     * @throws NullPointerException if {@code classifier} returns {@code null} for some element
+     */
+    public <T, K> ConcurrentMap<K, List<T>> groupBy(int i, List<? extends T> list,
+                                                    Function<? super T, ? extends K> classifier)
+            throws InterruptedException {
+        final List<? extends T> elements = randomAccess(list);
+        return countBlocks(i, elements.size(), (from, to) -> {
+            final ConcurrentMap<K, List<T>> groups = new ConcurrentHashMap<>();
+            for (T element : elements.subList(from, to)) {
+                groups.computeIfAbsent(classifier.apply(element), (key) -> new ArrayList<>()).add(element);
+            }
+            return groups;
+        }, (x) -> {
+            final ConcurrentMap<K, List<T>> groups = new ConcurrentHashMap<>();
+            x.forEach((blockGroups) -> blockGroups.forEach((key, group) -> groups.merge(key, group, (first, second) -> {
+                first.addAll(second);
+                return first;
+            })));
+            return groups;
+        });
+    }
+
+    /**
+     * Returns sum of {@code values}, computed in {@code long}.
+     */
+    public long sum(int i, int[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+            }
+            return sum;
+        }, (x) -> x.mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Returns the least element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public int min(int i, int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            int min = values[from];
+            for (int j = from + 1; j < to; j++) {
+                min = Math.min(min, values[j]);
+            }
+            return min;
+        }, (x) -> x.mapToInt(Integer::intValue).min().getAsInt());
+    }
+
+    /**
+     * Returns the greatest element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public int max(int i, int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            int max = values[from];
+            for (int j = from + 1; j < to; j++) {
+                max = Math.max(max, values[j]);
+            }
+            return max;
+        }, (x) -> x.mapToInt(Integer::intValue).max().getAsInt());
+    }
+
+    /**
+     * Returns index of the first greatest element of {@code values}, or {@code -1} if it is empty.
+     */
+    public int argmax(int i, int[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            int index = from;
+            for (int j = from + 1; j < to; j++) {
+                if (values[j] > values[index]) {
+                    index = j;
+                }
+            }
+            return index;
+        }, (x) -> x.mapToInt(Integer::intValue)
+                .reduce(-1, (first, second) -> first == -1 || values[second] > values[first] ? second : first));
+    }
+
+    /**
+     * Returns elements of {@code values} satisfying {@code predicate}, in the same two passes as {@link #filter(int, List, Predicate)}.
+     */
+    public int[] filter(int i, int[] values, IntPredicate predicate) throws InterruptedException {
+        final boolean[] matches = new boolean[values.length];
+        final List<int[]> blocks = mark(i, values.length, (j) -> predicate.test(values[j]), matches);
+        final int[] offsets = offsets(blocks);
+
+        final int[] result = new int[offsets[blocks.size()]];
+        countBlocks(i, blocks.size(), (from, to) -> {
+            int position = offsets[from];
+            for (int j = blocks.get(from)[0]; j < blocks.get(to - 1)[1]; j++) {
+                if (matches[j]) {
+                    result[position++] = values[j];
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    /**
+     * Returns inclusive prefix sums of {@code values}, computed in {@code long}.
+     * The first pass computes prefix sums inside every block, the second one adds sums of preceding blocks.
+     */
+    public long[] prefixSums(int i, int[] values) throws InterruptedException {
+        final long[] result = new long[values.length];
+        final List<int[]> blocks = countBlocks(i, values.length, (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+                result[j] = sum;
+            }
+            return List.of(new int[]{from, to});
+        }, AbstractParallelism::concat);
+
+        final long[] offsets = new long[blocks.size()];
+        for (int j = 1; j < blocks.size(); j++) {
+            offsets[j] = offsets[j - 1] + result[blocks.get(j - 1)[1] - 1];
+        }
+        countBlocks(i, blocks.size(), (from, to) -> {
+            for (int block = from; block < to; block++) {
+                final long offset = offsets[block];
+                for (int j = blocks.get(block)[0]; j < blocks.get(block)[1]; j++) {
+                    result[j] += offset;
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    /**
+     * Returns sum of {@code values}.
+     */
+    public long sum(int i, long[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+            }
+            return sum;
+        }, (x) -> x.mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Returns the least element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public long min(int i, long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            long min = values[from];
+            for (int j = from + 1; j < to; j++) {
+                min = Math.min(min, values[j]);
+            }
+            return min;
+        }, (x) -> x.mapToLong(Long::longValue).min().getAsLong());
+    }
+
+    /**
+     * Returns the greatest element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public long max(int i, long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            long max = values[from];
+            for (int j = from + 1; j < to; j++) {
+                max = Math.max(max, values[j]);
+            }
+            return max;
+        }, (x) -> x.mapToLong(Long::longValue).max().getAsLong());
+    }
+
+    /**
+     * Returns index of the first greatest element of {@code values}, or {@code -1} if it is empty.
+     */
+    public int argmax(int i, long[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            int index = from;
+            for (int j = from + 1; j < to; j++) {
+                if (values[j] > values[index]) {
+                    index = j;
+                }
+            }
+            return index;
+        }, (x) -> x.mapToInt(Integer::intValue)
+                .reduce(-1, (first, second) -> first == -1 || values[second] > values[first] ? second : first));
+    }
+
+    /**
+     * Returns elements of {@code values} satisfying {@code predicate}, in the same two passes as {@link #filter(int, List, Predicate)}.
+     */
+    public long[] filter(int i, long[] values, LongPredicate predicate) throws InterruptedException {
+        final boolean[] matches = new boolean[values.length];
+        final List<int[]> blocks = mark(i, values.length, (j) -> predicate.test(values[j]), matches);
+        final int[] offsets = offsets(blocks);
+
+        final long[] result = new long[offsets[blocks.size()]];
+        countBlocks(i, blocks.size(), (from, to) -> {
+            int position = offsets[from];
+            for (int j = blocks.get(from)[0]; j < blocks.get(to - 1)[1]; j++) {
+                if (matches[j]) {
+                    result[position++] = values[j];
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    /**
+     * Returns inclusive prefix sums of {@code values}.
+     * The first pass computes prefix sums inside every block, the second one adds sums of preceding blocks.
+     */
+    public long[] prefixSums(int i, long[] values) throws InterruptedException {
+        final long[] result = new long[values.length];
+        final List<int[]> blocks = countBlocks(i, values.length, (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+                result[j] = sum;
+            }
+            return List.of(new int[]{from, to});
+        }, AbstractParallelism::concat);
+
+        final long[] offsets = new long[blocks.size()];
+        for (int j = 1; j < blocks.size(); j++) {
+            offsets[j] = offsets[j - 1] + result[blocks.get(j - 1)[1] - 1];
+        }
+        countBlocks(i, blocks.size(), (from, to) -> {
+            for (int block = from; block < to; block++) {
+                final long offset = offsets[block];
+                for (int j = blocks.get(block)[0]; j < blocks.get(block)[1]; j++) {
+                    result[j] += offset;
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    /**
+     * Returns sum of {@code values}.
+     */
+    public double sum(int i, double[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            double sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+            }
+            return sum;
+        }, (x) -> x.mapToDouble(Double::doubleValue).sum());
+    }
+
+    /**
+     * Returns the least element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public double min(int i, double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            double min = values[from];
+            for (int j = from + 1; j < to; j++) {
+                min = Math.min(min, values[j]);
+            }
+            return min;
+        }, (x) -> x.mapToDouble(Double::doubleValue).min().getAsDouble());
+    }
+
+    /**
+     * Returns the greatest element of {@code values}.
+     *
+     * @throws NoSuchElementException if {@code values} is empty
+     */
+    public double max(int i, double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return countBlocks(i, values.length, (from, to) -> {
+            double max = values[from];
+            for (int j = from + 1; j < to; j++) {
+                max = Math.max(max, values[j]);
+            }
+            return max;
+        }, (x) -> x.mapToDouble(Double::doubleValue).max().getAsDouble());
+    }
+
+    /**
+     * Returns index of the first greatest element of {@code values} in the order of {@link Double#compare}, or {@code -1} if it is empty.
+     */
+    public int argmax(int i, double[] values) throws InterruptedException {
+        return countBlocks(i, values.length, (from, to) -> {
+            int index = from;
+            for (int j = from + 1; j < to; j++) {
+                if (Double.compare(values[j], values[index]) > 0) {
+                    index = j;
+                }
+            }
+            return index;
+        }, (x) -> x.mapToInt(Integer::intValue)
+                .reduce(-1, (first, second) -> first == -1 || Double.compare(values[second], values[first]) > 0 ? second : first));
+    }
+
+    /**
+     * Returns elements of {@code values} satisfying {@code predicate}, in the same two passes as {@link #filter(int, List, Predicate)}.
+     */
+    public double[] filter(int i, double[] values, DoublePredicate predicate) throws InterruptedException {
+        final boolean[] matches = new boolean[values.length];
+        final List<int[]> blocks = mark(i, values.length, (j) -> predicate.test(values[j]), matches);
+        final int[] offsets = offsets(blocks);
+
+        final double[] result = new double[offsets[blocks.size()]];
+        countBlocks(i, blocks.size(), (from, to) -> {
+            int position = offsets[from];
+            for (int j = blocks.get(from)[0]; j < blocks.get(to - 1)[1]; j++) {
+                if (matches[j]) {
+                    result[position++] = values[j];
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    /**
+     * Returns inclusive prefix sums of {@code values}.
+     * The first pass computes prefix sums inside every block, the second one adds sums of preceding blocks.
+     */
+    public double[] prefixSums(int i, double[] values) throws InterruptedException {
+        final double[] result = new double[values.length];
+        final List<int[]> blocks = countBlocks(i, values.length, (from, to) -> {
+            double sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values[j];
+                result[j] = sum;
+            }
+            return List.of(new int[]{from, to});
+        }, AbstractParallelism::concat);
+
+        final double[] offsets = new double[blocks.size()];
+        for (int j = 1; j < blocks.size(); j++) {
+            offsets[j] = offsets[j - 1] + result[blocks.get(j - 1)[1] - 1];
+        }
+        countBlocks(i, blocks.size(), (from, to) -> {
+            for (int block = from; block < to; block++) {
+                final double offset = offsets[block];
+                for (int j = blocks.get(block)[0]; j < blocks.get(block)[1]; j++) {
+                    result[j] += offset;
+                }
+            }
+            return null;
+        }, (x) -> null);
+        return result;
+    }
+
+    private static void checkNotEmpty(int length) {
+        if (length == 0) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Marks indices of {@code [0, size)} satisfying {@code test} in {@code matches}.
+     *
+     * @return {from, to, number of marked indices} of every block
+     */
+    private List<int[]> mark(int i, int size, IntPredicate test, boolean[] matches) throws InterruptedException {
+        return countBlocks(i, size, (from, to) -> {
+            int count = 0;
+            for (int j = from; j < to; j++) {
+                // no branch on the result: predicates over random data are mispredicted often
+                final boolean match = test.test(j);
+                matches[j] = match;
+                count += match ? 1 : 0;
+            }
+            return List.of(new int[]{from, to, count});
+        }, AbstractParallelism::concat);
+    }
+}
@@ -0,0 +1,148 @@
+package ru.ifmo.rain.krotkov.concurrent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * {@link info.kgeorgiy.java.advanced.concurrent.ListIP} on top of a {@link ForkJoinPool}.
+ * The list is cut into many more leaves than threads and the range of leaves is split recursively,
+ * so idle threads steal halves of ranges from busy ones and uneven cost of elements is balanced automatically.
+ */
+public class ForkJoinParallelism extends AbstractParallelism {
+    private static final int LEAVES_PER_THREAD = 16;
+    private static final int MAX_POOLS = 4;
+
+    private final ForkJoinPool pool;
+    // pools with parallelism equal to the requested number of threads, used if no pool is given,
+    // from the least to the most recently used
+    private final Map<Integer, ForkJoinPool> pools = new LinkedHashMap<>();
+
+    public ForkJoinParallelism() {
+        pool = null;
+    }
+
+    /**
+     * Runs all operations in {@code pool}. Requested number of threads then only limits
+     * how finely the list is split, parallelism is that of the pool.
+     */
+    public ForkJoinParallelism(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Task<R> extends RecursiveAction {
+        private final int size;
+        private final Block<? extends R> block;
+        private final int leavesNum;
+        private final Object[] results;
+        // the pool rebuilds exceptions when rethrowing them from joins, so the original one is kept here
+        private final AtomicReference<Throwable> failure;
+        private final int from;
+        private final int to;
+
+        Task(int size, Block<? extends R> block, int leavesNum, Object[] results,
+             AtomicReference<Throwable> failure, int from, int to) {
+            this.size = size;
+            this.block = block;
+            this.leavesNum = leavesNum;
+            this.results = results;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (failure.get() != null) {
+                // the remaining leaves are not needed anymore
+                return;
+            }
+            if (to - from == 1) {
+                try {
+                    results[from] = block.apply(blockStart(0, size, from, leavesNum),
+                            blockStart(0, size, from + 1, leavesNum));
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task<>(size, block, leavesNum, results, failure, from, middle),
+                    new Task<>(size, block, leavesNum, results, failure, middle, to));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <R> R countBlocks(int threadsNum, int size, Block<? extends R> block,
+                                Function<Stream<? extends R>, ? extends R> reduce) throws InterruptedException {
+        if (threadsNum <= 0) throw new IllegalArgumentException("Number of threads must be positive");
+
+        final int leavesNum = (int) Math.min(size, (long) threadsNum * LEAVES_PER_THREAD);
+        if (threadsNum == 1 || leavesNum <= 1) {
+            return reduce.apply(size == 0 ? Stream.empty() : Stream.of(block.apply(0, size)));
+        }
+
+        final Object[] results = new Object[leavesNum];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final ForkJoinTask<Void> task = submit(threadsNum,
+                new Task<>(size, block, leavesNum, results, failure, 0, leavesNum));
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (failure.get() instanceof RuntimeException) {
+                throw (RuntimeException) failure.get();
+            }
+            if (failure.get() instanceof Error) {
+                throw (Error) failure.get();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return reduce.apply(IntStream.range(0, leavesNum).mapToObj(leaf -> (R) results[leaf]));
+    }
+
+    /**
+     * Submits {@code task} to the given pool, or to the pool with parallelism {@code threadsNum}.
+     * At most {@link #MAX_POOLS} such pools are kept: the least recently used one is shut down
+     * when another one is needed, tasks already submitted to it still complete.
+     */
+    private ForkJoinTask<Void> submit(int threadsNum, Task<?> task) {
+        if (pool != null) {
+            return pool.submit(task);
+        }
+        // a pool is not shut down between getting it and submitting to it
+        synchronized (pools) {
+            ForkJoinPool threadsPool = pools.remove(threadsNum);
+            if (threadsPool == null) {
+                threadsPool = new ForkJoinPool(threadsNum);
+                if (pools.size() == MAX_POOLS) {
+                    final Iterator<ForkJoinPool> eldest = pools.values().iterator();
+                    eldest.next().shutdown();
+                    eldest.remove();
+                }
+            }
+            pools.put(threadsNum, threadsPool);
+            return threadsPool.submit(task);
+        }
+    }
+}
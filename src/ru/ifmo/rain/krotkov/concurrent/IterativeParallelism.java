@@ -1,124 +1,156 @@
 package ru.ifmo.rain.krotkov.concurrent;
 
-import info.kgeorgiy.java.advanced.concurrent.ListIP;
-
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
-public class IterativeParallelism implements ListIP {
+public class IterativeParallelism extends AbstractParallelism {
+    private static final int BLOCKS_PER_THREAD = 4;
+
     private ParallelMapper mapper;
+    private final ExecutorService executor;
 
     public IterativeParallelism() {
         mapper = null;
+        executor = null;
     }
 
     public IterativeParallelism(ParallelMapper mapper) {
         this.mapper = mapper;
+        executor = null;
     }
 
-    private <T, R> R countFunc(int threadsNum, List<? extends T> list,
-                               Function<Stream<? extends T>, ? extends R> map,
-                               Function<Stream<? extends R>, ? extends R> reduce) throws InterruptedException {
-
-        if (threadsNum <= 0) throw new IllegalArgumentException("Number of threads must be positive");
-
-        threadsNum = Math.min(threadsNum, list.size());
+    /**
+     * Runs blocks on threads of {@code executor} instead of starting new threads for every call,
+     * so a call costs a task submission rather than a thread creation.
+     * The executor is borrowed: it is neither shut down nor otherwise managed by this instance.
+     */
+    public IterativeParallelism(ExecutorService executor) {
+        mapper = null;
+        this.executor = Objects.requireNonNull(executor);
+    }
 
-        final List<Thread> threads = new ArrayList<>(threadsNum);
-        final List<R> results;
+    /**
+     * Splits the list into several blocks per thread and starts all workers at once.
+     * Threads take blocks one by one, so a thread which gets cheap blocks takes more of them.
+     * Cost of elements is not estimated before the start: that would run a part of the list
+     * on the critical path in the calling thread alone.
+     * The number of blocks is bounded, as their results are reduced sequentially.
+     */
+    @Override
+    protected <R> R countBlocks(int threadsNum, int size, Block<? extends R> block,
+                                Function<Stream<? extends R>, ? extends R> reduce) throws InterruptedException {
 
-        final int blockSize = list.size() / threadsNum;
-        final int extra = list.size() % threadsNum;
+        if (threadsNum <= 0) throw new IllegalArgumentException("Number of threads must be positive");
 
-        int windowLeft = 0;
-        List<Stream<? extends T>> listParts = new ArrayList<>();
-        for (int j = 0; j < threadsNum; j++) {
-            final int left = windowLeft;
-            final int right = left + blockSize + (j < extra ? 1 : 0);
+        final int blocksNum = (int) Math.min(size, (long) threadsNum * BLOCKS_PER_THREAD);
+        final int workersNum = Math.min(threadsNum, blocksNum);
 
-            listParts.add(list.subList(left, right).stream());
+        if (workersNum <= 1) {
+            return reduce.apply(size == 0 ? Stream.empty() : Stream.of(block.apply(0, size)));
+        }
 
-            windowLeft = right;
+        // block j is [bounds[j], bounds[j + 1])
+        final int[] bounds = new int[blocksNum + 1];
+        for (int j = 0; j <= blocksNum; j++) {
+            bounds[j] = blockStart(0, size, j, blocksNum);
         }
 
+        final List<R> results;
         if (mapper != null) {
-            results = mapper.map(map, listParts);
+            final List<Integer> indices = new ArrayList<>(blocksNum);
+            for (int j = 0; j < blocksNum; j++) {
+                indices.add(j);
+            }
+            results = mapper.map(j -> block.apply(bounds[j], bounds[j + 1]), indices);
         } else {
-            results = new ArrayList<>(Collections.nCopies(threadsNum, null));
-
-            for (int j = 0; j < threadsNum; j++) {
-                final int pos = j;
-                threads.add(new Thread(() -> results.set(pos, map.apply(
-                        listParts.get(pos)))));
+            results = runBlocks(workersNum, block, bounds);
+        }
+        return reduce.apply(results.stream());
+    }
 
-                threads.get(j).start();
+    /**
+     * Applies {@code block} to every range of {@code bounds} using {@code workersNum} workers,
+     * the calling thread being one of them.
+     * Other workers are submitted to the executor if there is one, or started as new threads otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> List<R> runBlocks(int workersNum, Block<? extends R> block, int[] bounds)
+            throws InterruptedException {
+        final int blocksNum = bounds.length - 1;
+        final Object[] results = new Object[blocksNum];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Runnable worker = () -> {
+            try {
+                for (int j = next.getAndIncrement(); j < blocksNum; j = next.getAndIncrement()) {
+                    results[j] = block.apply(bounds[j], bounds[j + 1]);
+                }
+            } catch (RuntimeException | Error e) {
+                // the remaining blocks are not needed anymore
+                next.set(blocksNum);
+                failure.compareAndSet(null, e);
             }
-
-            InterruptedException exception = null;
-            for (int j = 0; j < threadsNum; j++) {
-                try {
-                    threads.get(j).join();
-                } catch (InterruptedException e) {
-                    if (exception == null) {
-                        exception = e;
-                    } else {
-                        exception.addSuppressed(e);
-                    }
+        };
+
+        final List<Future<?>> futures = new ArrayList<>(workersNum - 1);
+        final List<Thread> threads = new ArrayList<>(workersNum - 1);
+        for (int j = 1; j < workersNum; j++) {
+            if (executor != null) {
+                futures.add(executor.submit(worker));
+            } else {
+                threads.add(new Thread(worker));
+                threads.get(j - 1).start();
+            }
+        }
+        worker.run();
+
+        InterruptedException exception = null;
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
                 }
             }
-
-            if (exception != null) {
-                throw exception;
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            next.set(blocksNum);
+            futures.forEach(future -> future.cancel(true));
+            exception = e;
+        } catch (ExecutionException e) {
+            // workers catch everything themselves
+            throw new AssertionError(e);
         }
-        return reduce.apply(results.stream());
-    }
-
-    @Override
-    public String join(int i, List<?> list) throws InterruptedException {
-        return countFunc(i, list,
-                x -> x.map(Object::toString).collect(Collectors.joining()),
-                x -> x.collect(Collectors.joining()));
-    }
-
-    @Override
-    public <T> List<T> filter(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return countFunc(i, list,
-                (x) -> x.filter(predicate).collect(Collectors.toList()),
-                (x) -> x.flatMap(List::stream).collect(Collectors.toList()));
-    }
-
-    @Override
-    public <T, U> List<U> map(int i, List<? extends T> list, Function<? super T, ? extends U> function) throws InterruptedException {
-        return countFunc(i, list,
-                (x) -> x.map(function).collect(Collectors.toList()),
-                (x) -> x.flatMap(List::stream).collect(Collectors.toList()));
-    }
-
-    @Override
-    public <T> T maximum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
-        final Function<Stream<? extends T>, ? extends T> countMax = x -> x.max(comparator).orElse(null);
-        return countFunc(i, list, countMax, countMax);
-    }
-
-    @Override
-    public <T> T minimum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
-        final Function<Stream<? extends T>, ? extends T> countMin = x -> x.min(comparator).orElse(null);
-        return countFunc(i, list, countMin, countMin);
-    }
-
-    @Override
-    public <T> boolean all(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return countFunc(i, list, (x) -> x.allMatch(predicate), (x) -> x.allMatch((y) -> y));
-    }
 
-    @Override
-    public <T> boolean any(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return countFunc(i, list, (x) -> x.anyMatch(predicate), (x) -> x.anyMatch((y) -> y));
+        if (exception != null) {
+            throw exception;
+        }
+        if (failure.get() instanceof RuntimeException) {
+            throw (RuntimeException) failure.get();
+        }
+        if (failure.get() instanceof Error) {
+            throw (Error) failure.get();
+        }
+        final List<R> list = new ArrayList<>(blocksNum);
+        for (int j = 0; j < blocksNum; j++) {
+            list.add((R) results[j]);
+        }
+        return list;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package ru.ifmo.rain.krotkov.concurrent;
+
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+
+/**
+ * Associative operation together with its identity element.
+ * Results of blocks reduced with a monoid can be combined in any grouping, which makes the reduction parallel.
+ */
+public class Monoid<T> {
+    private final T identity;
+    private final BinaryOperator<T> operator;
+
+    public Monoid(T identity, BinaryOperator<T> operator) {
+        this.identity = identity;
+        this.operator = Objects.requireNonNull(operator);
+    }
+
+    public T getIdentity() {
+        return identity;
+    }
+
+    public BinaryOperator<T> getOperator() {
+        return operator;
+    }
+}
@@ -3,12 +3,43 @@ package ru.ifmo.rain.krotkov.mapper;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 
+/**
+ * Mapper with a fixed set of worker threads.
+ * Tasks are passed through a lock-free queue: submitting a task and taking it never block,
+ * a worker which found the queue empty registers itself as idle and parks until it is unparked.
+ * A submitter unparks a single worker, and a worker which took a task unparks the next one
+ * while the queue is not empty, so a burst of tasks costs one wake-up per worker rather than per task.
+ * <p>
+ * A {@link #map} call does not submit a task per element: it submits a token per worker,
+ * and a token maps a contiguous range of elements and returns to the queue while the rest of the list is not taken.
+ * <p>
+ * The queue is thus a ring of tokens of concurrent mappings, served in turn a range at a time,
+ * so a large mapping does not delay a small one submitted later by more than a range per thread.
+ * A mapping of weight {@code w} circulates {@code w} times as many tokens, and gets {@code w} times
+ * as large share of threads while others are running.
+ */
 public class ParallelMapperImpl implements ParallelMapper {
+    // smaller ranges are dominated by cost of passing them through the queue
+    private static final long MIN_CHUNK_NANOS = 50_000;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Weight of mappings which do not specify it.
+     */
+    public static final int DEFAULT_WEIGHT = 1;
 
     private final List<Thread> workingThreads;
     private final Queue<Runnable> tasksQueue;
+    private final Queue<IdleWorker> idleWorkers;
+    private final Set<Job<?, ?>> activeJobs = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
 
     public ParallelMapperImpl(int threadsNumber) {
         if (threadsNumber <= 0) {
@@ -16,13 +47,16 @@ public class ParallelMapperImpl implements ParallelMapper {
         }
 
         workingThreads = new ArrayList<>();
-        tasksQueue = new ArrayDeque<>();
+        tasksQueue = new ConcurrentLinkedQueue<>();
+        idleWorkers = new ConcurrentLinkedQueue<>();
 
 
         Runnable worker = () -> {
+            IdleWorker self = new IdleWorker(Thread.currentThread());
             try {
-                while (!Thread.interrupted()) {
-                    doTask();
+                // a task may swallow the interruption of close(), so the flag is checked too
+                while (!closed && !Thread.interrupted()) {
+                    doTask(self);
                 }
             } catch (InterruptedException ignored) {
                 // anyway will interrupt current thread
@@ -36,95 +70,257 @@ public class ParallelMapperImpl implements ParallelMapper {
         workingThreads.forEach(Thread::start);
     }
 
-    private void doTask() throws InterruptedException {
-        Runnable task;
-        synchronized (tasksQueue) {
-            while (tasksQueue.isEmpty()) {
-                tasksQueue.wait();
+    private void doTask(IdleWorker self) throws InterruptedException {
+        Runnable task = tasksQueue.poll();
+        while (task == null) {
+            // registration precedes the check, so a task added after the check unparks this thread;
+            // a worker which is still registered after a spurious wake-up is not registered twice
+            if (self.idle.compareAndSet(false, true)) {
+                idleWorkers.add(self);
+            }
+            if (tasksQueue.isEmpty()) {
+                LockSupport.park(this);
+            }
+            if (closed || Thread.interrupted()) {
+                throw new InterruptedException();
             }
-
             task = tasksQueue.poll();
         }
+        // a worker which found a task before anyone woke it leaves the idle queue itself
+        if (self.idle.compareAndSet(true, false)) {
+            idleWorkers.remove(self);
+        }
 
+        if (!tasksQueue.isEmpty()) {
+            wakeUp();
+        }
         task.run();
     }
 
-    private class TaskMeta {
-        private Exception exception = null;
-        private int cnt;
-        private int bound;
-
-        TaskMeta(int bound) {
-            this.bound = bound;
+    private void wakeUp() {
+        // an entry may be left by a worker which is about to remove it, such a worker is busy already
+        for (IdleWorker idle = idleWorkers.poll(); idle != null; idle = idleWorkers.poll()) {
+            if (idle.idle.compareAndSet(true, false)) {
+                LockSupport.unpark(idle.thread);
+                return;
+            }
         }
+    }
+
+    /**
+     * Entry of a worker in the idle queue. The worker is in the queue while {@code idle} is set,
+     * and whoever clears it, the worker itself or a waking thread, takes the worker out of the idle state.
+     */
+    private static final class IdleWorker {
+        private final Thread thread;
+        private final AtomicBoolean idle = new AtomicBoolean();
 
-        boolean hasException() {
-            return exception != null;
+        private IdleWorker(Thread thread) {
+            this.thread = thread;
         }
+    }
+
+    /**
+     * Elements of a single mapping, passed to {@code sink} as soon as they are mapped.
+     * Tokens of the job in the queue map ranges of elements and return to the queue while there are more.
+     * A range size starts from one element and adapts to the measured time of previous ranges,
+     * but is limited by a share of elements not taken yet, so the last ranges are balanced between threads.
+     * <p>
+     * The first failure cancels the job: no more ranges are taken, running ranges stop before the next element,
+     * and {@code done} completes exceptionally at once. Completing {@code done} from outside cancels the job too.
+     */
+    private class Job<T, R> implements Runnable {
+        private final Function<? super T, ? extends R> f;
+        private final List<? extends T> args;
+        private final ObjIntConsumer<? super R> sink;
+        // exceptional completion holds exception to be thrown by map()
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private volatile int chunkSize = 1;
 
-        synchronized void setException(Exception e) {
-            exception = e;
+        Job(Function<? super T, ? extends R> f, List<? extends T> args, ObjIntConsumer<? super R> sink) {
+            this.f = f;
+            this.args = args;
+            this.sink = sink;
+            remaining = new AtomicInteger(args.size());
         }
 
-        Exception getException() {
-            return exception;
+        @Override
+        public void run() {
+            final int size = args.size();
+            final int share = (size - next.get()) / (workingThreads.size() * CHUNKS_PER_THREAD);
+            final int length = Math.max(1, Math.min(chunkSize, share));
+            final int from = next.getAndAdd(length);
+            if (from >= size) {
+                return;
+            }
+            final int to = Math.min(size, from + length);
+
+            final long start = System.nanoTime();
+            try {
+                for (int i = from; i < to && !done.isDone(); i++) {
+                    sink.accept(f.apply(args.get(i)), i);
+                }
+            } catch (Error e) {
+                cancel(e);
+            } catch (Throwable e) {
+                cancel(new RuntimeException(e));
+            } finally {
+                final long nanos = Math.max(1, System.nanoTime() - start);
+                chunkSize = (int) Math.max(1, Math.min(2L * length, length * MIN_CHUNK_NANOS / nanos));
+                if (to < size && !done.isDone()) {
+                    tasksQueue.add(this);
+                }
+                if (remaining.addAndGet(from - to) == 0) {
+                    done.complete(null);
+                }
+            }
         }
 
-        synchronized void incrementCounter() {
-            cnt++;
-            if (cnt >= bound) {
-                this.notify();
+        /**
+         * Stops the job with {@code exception}, unless it is already stopped.
+         */
+        void cancel(Throwable exception) {
+            if (done.completeExceptionally(exception)) {
+                next.set(args.size());
             }
         }
+    }
 
-        synchronized void waitCompletion() throws InterruptedException {
-            while (!(cnt >= bound)) {
-                this.wait();
+    private <T, R> Job<T, R> submit(Function<? super T, ? extends R> f, List<? extends T> args,
+                                    ObjIntConsumer<? super R> sink, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        Job<T, R> job = new Job<>(f, args, sink);
+
+        // registration precedes the check, so close() either is seen here or sees the job
+        activeJobs.add(job);
+        job.done.whenComplete((ignored, e) -> activeJobs.remove(job));
+        if (closed) {
+            job.cancel(new IllegalStateException("Mapper is closed"));
+        } else if (args.isEmpty()) {
+            job.done.complete(null);
+        } else {
+            for (long i = Math.min((long) workingThreads.size() * weight, args.size()); i > 0; i--) {
+                tasksQueue.add(job);
             }
+            wakeUp();
         }
+        return job;
+    }
+
+    // ranges are read by index, which is linear for sequential lists
+    private static <T> List<? extends T> randomAccess(List<? extends T> args) {
+        return args instanceof RandomAccess ? args : new ArrayList<>(args);
+    }
+
+    private static <T> List<T> nulls(int size) {
+        return new ArrayList<>(Collections.nCopies(size, null));
     }
 
     /**
      * Maps function {@code f} over specified {@code args}.
      * Mapping for each element performs in parallel.
+     * The first exception thrown by {@code f} stops mapping of the other elements.
      *
-     * @return {@link List} of mapped args or nulls on {@link Exception}
+     * @return {@link List} of mapped args
+     * @throws RuntimeException with the first exception thrown by {@code f} as its cause
+     * @throws IllegalStateException if the mapper is closed before or during mapping
      * @throws InterruptedException if calling thread was interrupted
      */
     @Override
     public <T, R> List<R> map(Function<? super T, ? extends R> f, List<? extends T> args) throws InterruptedException {
-        List<R> resultList = new ArrayList<>(Collections.nCopies(args.size(), null));
-        TaskMeta taskMeta = new TaskMeta(args.size());
-
-        for (int i = 0; i < args.size(); i++) {
-            final int pos = i;
-            synchronized (tasksQueue) {
-                tasksQueue.add(() -> {
-                    try {
-                        resultList.set(pos, f.apply(args.get(pos)));
-                    } catch (Exception e) {
-                        taskMeta.setException(e);
-                    } finally {
-                        taskMeta.incrementCounter();
-                    }
-                });
-                tasksQueue.notify();
+        List<? extends T> elements = randomAccess(args);
+        List<R> results = nulls(elements.size());
+        Job<T, R> job = submit(f, elements, (result, i) -> results.set(i, result), DEFAULT_WEIGHT);
+
+        try {
+            job.done.get();
+        } catch (InterruptedException e) {
+            job.cancel(new CancellationException());
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw (RuntimeException) e.getCause();
         }
+        return results;
+    }
 
-        taskMeta.waitCompletion();
+    /**
+     * Maps function {@code f} over specified {@code args} like {@link #map}, but without waiting for the result.
+     * Returned future fails with the exception {@link #map} would throw, and cancelling it stops the mapping.
+     * Dependent actions of the future may run on threads of this mapper.
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(Function<? super T, ? extends R> f, List<? extends T> args) {
+        return mapAsync(f, args, DEFAULT_WEIGHT);
+    }
 
-        if (taskMeta.hasException()) {
-            throw new RuntimeException(taskMeta.getException());
-        }
-        return resultList;
+    /**
+     * Same as {@link #mapAsync(Function, List)}, but while other mappings are running,
+     * this one gets a share of threads proportional to {@code weight}.
+     * Latency-sensitive mappings may be given a larger weight than batch ones.
+     *
+     * @throws IllegalArgumentException if {@code weight} is not positive
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(Function<? super T, ? extends R> f, List<? extends T> args,
+                                                      int weight) {
+        List<? extends T> elements = randomAccess(args);
+        List<R> results = nulls(elements.size());
+        Job<T, R> job = submit(f, elements, (result, i) -> results.set(i, result), weight);
+
+        CompletableFuture<List<R>> future = new CompletableFuture<>();
+        job.done.whenComplete((ignored, e) -> {
+            if (e == null) {
+                future.complete(results);
+            } else {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((ignored, e) -> {
+            if (e != null) {
+                job.cancel(e);
+            }
+        });
+        return future;
     }
 
     /**
-     * Stops all threads. All unfinished mappings are leaved in undefined state.
+     * Maps function {@code f} over specified {@code args} and passes every result with its index to {@code consumer}
+     * as soon as it is ready, so results come in order of completion rather than order of {@code args}.
+     * The consumer is called by threads of this mapper concurrently, an exception thrown by it fails the mapping.
+     * Returned future completes after all results are consumed, failures and cancellation are the same as of
+     * {@link #mapAsync}.
+     */
+    public <T, R> CompletableFuture<Void> mapUnordered(Function<? super T, ? extends R> f, List<? extends T> args,
+                                                       ObjIntConsumer<? super R> consumer) {
+        return mapUnordered(f, args, consumer, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * Same as {@link #mapUnordered(Function, List, ObjIntConsumer)} with a share of threads
+     * proportional to {@code weight}, like {@link #mapAsync(Function, List, int)}.
+     *
+     * @throws IllegalArgumentException if {@code weight} is not positive
+     */
+    public <T, R> CompletableFuture<Void> mapUnordered(Function<? super T, ? extends R> f, List<? extends T> args,
+                                                       ObjIntConsumer<? super R> consumer, int weight) {
+        return submit(f, randomAccess(args), consumer, weight).done;
+    }
+
+    /**
+     * Stops all threads. Unfinished mappings are cancelled: their callers throw {@link IllegalStateException},
+     * and their futures fail with it.
      */
     @Override
     public void close() {
+        closed = true;
+        for (Job<?, ?> job : activeJobs) {
+            job.cancel(new IllegalStateException("Mapper is closed"));
+        }
         workingThreads.forEach(Thread::interrupt);
 
         for (Thread thread : workingThreads) {
@@ -135,4 +331,4 @@ public class ParallelMapperImpl implements ParallelMapper {
             }
         }
     }
-}
\ No newline at end of file
+}